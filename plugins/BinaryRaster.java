@@ -0,0 +1,106 @@
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Binary image with one bit per pixel, each row a run of 64-bit words; bits past the width stay 0.
+ */
+public final class BinaryRaster {
+
+    final int width;
+    final int height;
+    final int words;
+    final long[] bits;
+
+    public BinaryRaster(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.words = (width + 63) >>> 6;
+        this.bits = new long[words * height];
+    }
+
+    /** Foreground = pixels equal to 255, as the binary plugins test it. */
+    public static BinaryRaster of(ImageProcessor ip) {
+        return of(ip, 255, 255);
+    }
+
+    /** Foreground = pixels with lo <= value <= hi; 8-bit images are read from the raw byte[]. */
+    public static BinaryRaster of(ImageProcessor ip, int lo, int hi) {
+        int width = ip.getWidth();
+        int height = ip.getHeight();
+        BinaryRaster r = new BinaryRaster(width, height);
+        if (ip instanceof ByteProcessor) {
+            byte[] pixels = (byte[]) ip.getPixels();
+            PixelKernels kernels = PixelKernels.get();
+            for (int y = 0; y < height; y++) {
+                kernels.packThreshold(pixels, y * width, width, lo, hi, r.bits, y * r.words);
+            }
+        } else {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int v = ip.getPixel(x, y);
+                    if (v >= lo && v <= hi) r.set(x, y);
+                }
+            }
+        }
+        return r;
+    }
+
+    /** 0 / 255 image of the same type (and LUT) as like. */
+    public ImageProcessor toProcessor(ImageProcessor like) {
+        ImageProcessor out = like.createProcessor(width, height);
+        if (out instanceof ByteProcessor) {
+            byte[] pixels = (byte[]) out.getPixels();
+            for (int y = 0; y < height; y++) {
+                int offset = y * width;
+                int base = y * words;
+                for (int w = 0; w < words; w++) {
+                    long word = bits[base + w];
+                    while (word != 0) {
+                        pixels[offset + (w << 6) + Long.numberOfTrailingZeros(word)] = (byte) 255;
+                        word &= word - 1;
+                    }
+                }
+            }
+        } else {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (get(x, y)) out.putPixel(x, y, 255);
+                }
+            }
+        }
+        return out;
+    }
+
+    public ByteProcessor toByteProcessor() {
+        return (ByteProcessor) toProcessor(new ByteProcessor(1, 1));
+    }
+
+    public boolean get(int x, int y) {
+        return (bits[y * words + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    public void set(int x, int y) {
+        bits[y * words + (x >>> 6)] |= 1L << x;
+    }
+
+    /** Sets pixels [from, to) of row y. */
+    public void setRange(int y, int from, int to) {
+        from = Math.max(0, from);
+        to = Math.min(width, to);
+        int base = y * words;
+        for (int x = from; x < to; ) {
+            int w = x >>> 6;
+            int end = Math.min(to, (w + 1) << 6);
+            int n = end - x;
+            long run = n == 64 ? -1L : ((1L << n) - 1) << x;
+            bits[base + w] |= run;
+            x = end;
+        }
+    }
+
+    /** this &= other, 64 pixels per word (same size). */
+    public BinaryRaster and(BinaryRaster other) {
+        for (int k = 0; k < bits.length; k++) bits[k] &= other.bits[k];
+        return this;
+    }
+}
@@ -0,0 +1,122 @@
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.GenericDialog;
+import ij.plugin.filter.PlugInFilter;
+import ij.plugin.filter.RankFilters;
+import ij.process.ImageProcessor;
+
+import java.util.Arrays;
+
+/**
+ * Process > Filters > Median for binary images, bit-identical but counting the set pixels under
+ * the kernel instead of ranking them; other images go to ImageJ's median.
+ */
+public class Binary_Median implements PlugInFilter {
+
+    ImagePlus imp;
+
+    public int setup(String arg, ImagePlus imp) {
+        this.imp = imp;
+        return DOES_8G;
+    }
+
+    public void run(ImageProcessor ip) {
+
+        GenericDialog gd = new GenericDialog("Binary Median");
+        gd.addNumericField("Radius:", 2, 1);
+        gd.addNumericField("Threads (0 = all cores):", 0, 0);
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+
+        double radius = gd.getNextNumber();
+        int threads = (int) gd.getNextNumber();
+
+        if (!isBinary(ip)) {
+            IJ.log("Binary Median: image is not binary (0/255), using the standard median.");
+            new RankFilters().rank(ip, radius, RankFilters.MEDIAN);
+        } else {
+            filter((byte[]) ip.getPixels(), ip.getWidth(), ip.getHeight(), radius, threads);
+        }
+    }
+
+    static boolean isBinary(ImageProcessor ip) {
+        int[] histogram = ip.getHistogram();
+        for (int v = 1; v < 255; v++) {
+            if (histogram[v] != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Half widths of the kernel rows dy = 0 .. kRadius of RankFilters' circular kernel for this
+     * radius, including its adjustments for radii in [1.5, 1.75) and [2.5, 2.85).
+     */
+    static int[] kernelHalfWidths(double radius) {
+        if (radius >= 1.5 && radius < 1.75) radius = 1.75;
+        else if (radius >= 2.5 && radius < 2.85) radius = 2.85;
+        int r2 = (int) (radius * radius) + 1;
+        int kRadius = (int) Math.sqrt(r2 + 1e-10);
+        int[] dx = new int[kRadius + 1];
+        for (int dy = 0; dy <= kRadius; dy++) {
+            dx[dy] = (int) Math.sqrt(r2 - dy * dy + 1e-10);
+        }
+        return dx;
+    }
+
+    /** Median of a 0 / 255 image in place. */
+    public static void filter(byte[] pixels, int width, int height, double radius, int threads) {
+        int[] dx = kernelHalfWidths(radius);
+        int kr = dx.length - 1;
+        int kernelCount = 0;
+        for (int dy = -kr; dy <= kr; dy++) kernelCount += 2 * dx[Math.abs(dy)] + 1;
+        int majority = kernelCount / 2 + 1;
+        int pad = dx[0];
+
+        byte[] out = new byte[pixels.length];
+        int bands = Math.min(Parallel.threads(threads), height);
+        Parallel.forEach(bands, bands, b -> {
+            int from = Parallel.bandStart(b, bands, height);
+            int to = Parallel.bandStart(b + 1, bands, height);
+            // Prefix sums of the (border padded) rows in use, by row index modulo the ring size
+            int[][] ring = new int[2 * kr + 2][width + 2 * pad + 1];
+            int[] ringRow = new int[ring.length];
+            Arrays.fill(ringRow, -1);
+
+            int[][] rows = new int[2 * kr + 1][];
+            for (int y = from; y < to; y++) {
+                for (int dy = -kr; dy <= kr; dy++) {
+                    int yy = Math.max(0, Math.min(height - 1, y + dy));
+                    int slot = yy % ring.length;
+                    if (ringRow[slot] != yy) {
+                        prefixRow(pixels, yy, width, pad, ring[slot]);
+                        ringRow[slot] = yy;
+                    }
+                    rows[dy + kr] = ring[slot];
+                }
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    // Padded column of x is x + pad; kernel row dy covers [x - h, x + h]
+                    int count = 0;
+                    for (int k = 0; k <= 2 * kr; k++) {
+                        int h = dx[Math.abs(k - kr)];
+                        count += rows[k][x + pad + h + 1] - rows[k][x + pad - h];
+                    }
+                    if (count >= majority) out[offset + x] = (byte) 255;
+                }
+            }
+        });
+        System.arraycopy(out, 0, pixels, 0, pixels.length);
+    }
+
+    /** prefix[i] = set pixels among padded columns [0, i), the row extended by pad edge copies. */
+    private static void prefixRow(byte[] pixels, int y, int width, int pad, int[] prefix) {
+        int offset = y * width;
+        int sum = 0;
+        prefix[0] = 0;
+        for (int i = 0; i < width + 2 * pad; i++) {
+            int x = Math.max(0, Math.min(width - 1, i - pad));
+            if (pixels[offset + x] != 0) sum++;
+            prefix[i + 1] = sum;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+import ij.process.ImageProcessor;
+
+import java.util.Arrays;
+
+/**
+ * Area and centroid of the 8-connected particles (value 255) of a binary image, numbered like
+ * Analyze Particles, from a run-length union-find labelling.
+ */
+public final class ConnectedComponents {
+
+    public final int count;
+    public final int[] area;
+    public final double[] xCentroid;
+    public final double[] yCentroid;
+
+    private ConnectedComponents(int count, int[] area, double[] xCentroid, double[] yCentroid) {
+        this.count = count;
+        this.area = area;
+        this.xCentroid = xCentroid;
+        this.yCentroid = yCentroid;
+    }
+
+    /** Runs of one band of rows, with union-find parents local to the band. */
+    private static final class Runs {
+        final int firstRow;
+        /** Runs of row firstRow + r are rowStart[r] .. rowStart[r + 1] - 1. */
+        final int[] rowStart;
+        int[] start = new int[256];
+        int[] end = new int[256];
+        int[] parent = new int[256];
+        int size;
+
+        Runs(int firstRow, int rows) {
+            this.firstRow = firstRow;
+            rowStart = new int[rows + 1];
+        }
+
+        void add(int s, int e) {
+            if (size == start.length) {
+                start = Arrays.copyOf(start, 2 * size);
+                end = Arrays.copyOf(end, 2 * size);
+                parent = Arrays.copyOf(parent, 2 * size);
+            }
+            start[size] = s;
+            end[size] = e;
+            parent[size] = size;
+            size++;
+        }
+    }
+
+    /** Labels the pixels equal to 255 of ip (8-bit) with the given number of threads (0 = all cores). */
+    public static ConnectedComponents label(ImageProcessor ip, int threads) {
+        int width = ip.getWidth();
+        int height = ip.getHeight();
+        byte[] pixels = (byte[]) ip.convertToByte(false).getPixels();
+
+        int bands = Math.max(1, Math.min(Parallel.threads(threads), height));
+        Runs[] bandRuns = new Runs[bands];
+        Parallel.forEach(bands, bands, b -> {
+            int from = Parallel.bandStart(b, bands, height);
+            int to = Parallel.bandStart(b + 1, bands, height);
+            bandRuns[b] = scan(pixels, width, from, to);
+        });
+
+        // One union-find over the runs of all bands
+        int[] offset = new int[bands + 1];
+        for (int b = 0; b < bands; b++) offset[b + 1] = offset[b] + bandRuns[b].size;
+        int[] parent = new int[offset[bands]];
+        for (int b = 0; b < bands; b++) {
+            Runs r = bandRuns[b];
+            for (int i = 0; i < r.size; i++) parent[offset[b] + i] = offset[b] + r.parent[i];
+        }
+        for (int b = 1; b < bands; b++) {
+            Runs above = bandRuns[b - 1];
+            Runs below = bandRuns[b];
+            int rows = above.rowStart.length - 1;
+            if (rows == 0 || below.rowStart.length == 1) continue;
+            joinRows(above.start, above.end, above.rowStart[rows - 1], above.rowStart[rows], offset[b - 1],
+                    below.start, below.end, below.rowStart[0], below.rowStart[1], offset[b], parent);
+        }
+
+        // Roots in raster order become labels 0, 1, ..; moments accumulate per label
+        int[] label = new int[parent.length];
+        int count = 0;
+        long[] area = new long[16];
+        double[] sumX = new double[16];
+        double[] sumY = new double[16];
+        for (int b = 0; b < bands; b++) {
+            Runs r = bandRuns[b];
+            for (int row = 0; row < r.rowStart.length - 1; row++) {
+                int y = r.firstRow + row;
+                for (int i = r.rowStart[row]; i < r.rowStart[row + 1]; i++) {
+                    int run = offset[b] + i;
+                    int root = find(parent, run);
+                    int l;
+                    if (root == run) {
+                        l = count++;
+                        if (l == area.length) {
+                            area = Arrays.copyOf(area, 2 * l);
+                            sumX = Arrays.copyOf(sumX, 2 * l);
+                            sumY = Arrays.copyOf(sumY, 2 * l);
+                        }
+                    } else {
+                        l = label[root];
+                    }
+                    label[run] = l;
+                    int s = r.start[i], e = r.end[i];
+                    long n = e - s;
+                    area[l] += n;
+                    sumX[l] += (s + e) * 0.5 * n; // sum of x + 0.5 over x = s .. e - 1
+                    sumY[l] += (y + 0.5) * n;
+                }
+            }
+        }
+
+        int[] pixelCounts = new int[count];
+        double[] xc = new double[count];
+        double[] yc = new double[count];
+        for (int l = 0; l < count; l++) {
+            pixelCounts[l] = (int) area[l];
+            xc[l] = sumX[l] / area[l];
+            yc[l] = sumY[l] / area[l];
+        }
+        return new ConnectedComponents(count, pixelCounts, xc, yc);
+    }
+
+    /** Runs of rows [from, to), each joined to the runs it touches in the row above. */
+    private static Runs scan(byte[] pixels, int width, int from, int to) {
+        Runs r = new Runs(from, to - from);
+        for (int y = from; y < to; y++) {
+            int row = y - from;
+            r.rowStart[row] = r.size;
+            int offset = y * width;
+            int x = 0;
+            while (x < width) {
+                while (x < width && pixels[offset + x] != (byte) 255) x++;
+                if (x == width) break;
+                int s = x;
+                while (x < width && pixels[offset + x] == (byte) 255) x++;
+                r.add(s, x);
+            }
+            r.rowStart[row + 1] = r.size;
+            if (row > 0) {
+                joinRows(r.start, r.end, r.rowStart[row - 1], r.rowStart[row], 0,
+                        r.start, r.end, r.rowStart[row], r.size, 0, r.parent);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Unions every run of the upper row [aFrom, aTo) with the runs of the lower row [bFrom, bTo)
+     * that overlap it or touch it diagonally; both lists are sorted, so one merge-like pass.
+     * Run i of a list is element aOffset + i (bOffset + i) of parent.
+     */
+    private static void joinRows(int[] aStart, int[] aEnd, int aFrom, int aTo, int aOffset,
+                                 int[] bStart, int[] bEnd, int bFrom, int bTo, int bOffset, int[] parent) {
+        int i = aFrom, j = bFrom;
+        while (i < aTo && j < bTo) {
+            // [s, e) runs touch 8-connected when each starts at most one pixel after the other ends
+            if (aStart[i] <= bEnd[j] && bStart[j] <= aEnd[i]) union(parent, aOffset + i, bOffset + j);
+            if (aEnd[i] < bEnd[j]) i++;
+            else j++;
+        }
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra < rb) parent[rb] = ra;
+        else if (rb < ra) parent[ra] = rb;
+    }
+
+    /* -------- Selection -------- */
+
+    /** Labels of the k largest particles, largest first (ties in label order). */
+    public int[] largest(int k) {
+        int[] all = new int[count];
+        for (int l = 0; l < count; l++) all[l] = l;
+        return largest(all, k);
+    }
+
+    /**
+     * Labels of the k largest particles among candidates, largest first (ties in label order),
+     * from a bounded min-heap: O(n log k) without sorting the candidates.
+     */
+    public int[] largest(int[] candidates, int k) {
+        k = Math.min(k, candidates.length);
+        if (k <= 0) return new int[0];
+        int[] heap = new int[k];
+        int size = 0;
+        for (int l : candidates) {
+            if (size < k) {
+                heap[size] = l;
+                siftUp(heap, size++);
+            } else if (before(l, heap[0])) {
+                heap[0] = l;
+                siftDown(heap, 0, size);
+            }
+        }
+        // Pop the smallest to the back: the array ends up largest first
+        for (int n = size - 1; n > 0; n--) {
+            int top = heap[0];
+            heap[0] = heap[n];
+            heap[n] = top;
+            siftDown(heap, 0, n);
+        }
+        return heap;
+    }
+
+    /** Whether particle a ranks before b: larger area, or equal area and smaller label. */
+    private boolean before(int a, int b) {
+        return area[a] > area[b] || (area[a] == area[b] && a < b);
+    }
+
+    /** Min-heap on rank: the root is the particle ranked last. */
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int p = (i - 1) / 2;
+            if (!before(heap[p], heap[i])) break;
+            int t = heap[p];
+            heap[p] = heap[i];
+            heap[i] = t;
+            i = p;
+        }
+    }
+
+    private void siftDown(int[] heap, int i, int size) {
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= size) break;
+            if (c + 1 < size && before(heap[c], heap[c + 1])) c++;
+            if (!before(heap[i], heap[c])) break;
+            int t = heap[c];
+            heap[c] = heap[i];
+            heap[i] = t;
+            i = c;
+        }
+    }
+
+    /** Elbow of the areas of all particles, see {@link #elbow(int[])}. */
+    public int elbow() {
+        int[] all = new int[count];
+        for (int l = 0; l < count; l++) all[l] = l;
+        return elbow(all);
+    }
+
+    /**
+     * Elbow (kneedle) of the areas of the candidates sorted in descending order: the rank with
+     * the largest distance from the line through the first and last points, as the elbow
+     * plugins computed it on their sorted lists. Only the area values are sorted (a primitive
+     * int[]), since the curve does not depend on which particle has which rank.
+     */
+    public int elbow(int[] candidates) {
+        int n = candidates.length;
+        int[] sorted = new int[n];
+        for (int i = 0; i < n; i++) sorted[i] = area[candidates[i]];
+        Arrays.sort(sorted);
+        double x1 = 0, y1 = sorted[n - 1];
+        double x2 = n - 1, y2 = sorted[0];
+        double norm = Math.sqrt(Math.pow(y2 - y1, 2) + Math.pow(x2 - x1, 2));
+        double maxDist = -1;
+        int index = 0;
+        for (int i = 0; i < n; i++) {
+            double dist = Math.abs((y2 - y1) * i - (x2 - x1) * sorted[n - 1 - i] + x2 * y1 - y2 * x1) / norm;
+            if (dist > maxDist) {
+                maxDist = dist;
+                index = i;
+            }
+        }
+        return index;
+    }
+}
@@ -25,13 +25,8 @@ public class Cut_After_Max implements PlugInFilter {
             }
         }
         
-        for (int i = 0; i < ip.getHeight(); i++) {
-            for (int j = 0; j < ip.getWidth(); j++) {
-                if (ip.getPixel(j, i) > maxPixelValue) {
-                    ip.putPixel(j, i, maxPixelValue);
-                }
-            }
-        }
+        // Clamp as one point operation over the raw pixels (SIMD when available)
+        PixelKernels.get().clampMax((byte[]) ip.getPixels(), maxPixelValue);
     }
 
 }
@@ -0,0 +1,53 @@
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.GenericDialog;
+import ij.plugin.filter.PlugInFilter;
+import ij.process.ImageProcessor;
+
+/**
+ * Dilates, erodes, opens or closes an 8-bit image in place with a line or rectangle element of
+ * any size (see LineMorphology).
+ */
+public class Directional_Morphology implements PlugInFilter {
+
+    static final String[] OPERATIONS = {"Dilate", "Erode", "Open", "Close"};
+
+    ImagePlus imp;
+
+    public int setup(String arg, ImagePlus imp) {
+        this.imp = imp;
+        return DOES_8G;
+    }
+
+    public void run(ImageProcessor ip) {
+
+        GenericDialog gd = new GenericDialog("Directional Morphology");
+        gd.addChoice("Operation:", OPERATIONS, OPERATIONS[0]);
+        gd.addNumericField("Horizontal length (pixels, 1 = none):", 3, 0);
+        gd.addNumericField("Vertical length (pixels, 1 = none):", 1, 0);
+        gd.addNumericField("Threads (0 = all cores):", 0, 0);
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+
+        String operation = gd.getNextChoice();
+        int hLength = (int) gd.getNextNumber();
+        int vLength = (int) gd.getNextNumber();
+        int threads = (int) gd.getNextNumber();
+        if (hLength < 1 || vLength < 1) {
+            IJ.error("Directional Morphology", "Lengths must be at least 1.");
+            return;
+        }
+
+        byte[] pixels = (byte[]) ip.getPixels();
+        int width = ip.getWidth();
+        int height = ip.getHeight();
+        if (operation.equals(OPERATIONS[0]))
+            LineMorphology.dilate(pixels, width, height, hLength, vLength, threads);
+        else if (operation.equals(OPERATIONS[1]))
+            LineMorphology.erode(pixels, width, height, hLength, vLength, threads);
+        else if (operation.equals(OPERATIONS[2]))
+            LineMorphology.open(pixels, width, height, hLength, vLength, threads);
+        else
+            LineMorphology.close(pixels, width, height, hLength, vLength, threads);
+    }
+}
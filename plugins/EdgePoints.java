@@ -0,0 +1,104 @@
+import ij.process.ImageProcessor;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Foreground pixels (value > threshold) of an 8-bit image as packed coordinates in row-major
+ * order, so the Hough plugins vote only these points.
+ */
+public final class EdgePoints {
+
+    final int width;
+    final int height;
+    final int threshold;
+    final int count;
+    final int[] xs;
+    final int[] ys;
+
+    private EdgePoints(int width, int height, int threshold, int count, int[] xs, int[] ys) {
+        this.width = width;
+        this.height = height;
+        this.threshold = threshold;
+        this.count = count;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Extracts all pixels brighter than threshold with one pass over the 8-bit pixel buffer. */
+    public static EdgePoints extract(ImageProcessor ip, int threshold) {
+        int width = ip.getWidth();
+        int height = ip.getHeight();
+        byte[] pixels = (byte[]) ip.getPixels();
+
+        int capacity = Math.max(1024, pixels.length / 32);
+        int[] xs = new int[capacity];
+        int[] ys = new int[capacity];
+        int n = 0;
+
+        for (int y = 0, offset = 0; y < height; y++, offset += width) {
+            for (int x = 0; x < width; x++) {
+                if ((pixels[offset + x] & 0xff) > threshold) {
+                    if (n == xs.length) {
+                        int grown = (int) Math.min((long) xs.length * 2, pixels.length);
+                        xs = Arrays.copyOf(xs, grown);
+                        ys = Arrays.copyOf(ys, grown);
+                    }
+                    xs[n] = x;
+                    ys[n] = y;
+                    n++;
+                }
+            }
+        }
+        return new EdgePoints(width, height, threshold, n, xs, ys);
+    }
+
+    /**
+     * Copy of the list in random order (Fisher-Yates), so any prefix is a uniform random
+     * sample of the points. Used by the progressive Hough mode.
+     */
+    public EdgePoints shuffled(long seed) {
+        int[] sx = Arrays.copyOf(xs, count);
+        int[] sy = Arrays.copyOf(ys, count);
+        SplittableRandom rnd = new SplittableRandom(seed);
+        for (int k = count - 1; k > 0; k--) {
+            int r = rnd.nextInt(k + 1);
+            int t = sx[k]; sx[k] = sx[r]; sx[r] = t;
+            t = sy[k]; sy[k] = sy[r]; sy[r] = t;
+        }
+        return new EdgePoints(width, height, threshold, count, sx, sy);
+    }
+
+    /**
+     * Points of the image shrunk by factor (x / factor, y / factor), without duplicates.
+     * Used for the coarse level of the coarse-to-fine Hough search.
+     */
+    public EdgePoints downsample(int factor) {
+        int cw = (width + factor - 1) / factor;
+        int ch = (height + factor - 1) / factor;
+        boolean[] seen = new boolean[cw * ch];
+        int[] cx = new int[Math.min(count, cw * ch)];
+        int[] cy = new int[cx.length];
+        int n = 0;
+        for (int k = 0; k < count; k++) {
+            int x = xs[k] / factor;
+            int y = ys[k] / factor;
+            if (seen[y * cw + x]) continue;
+            seen[y * cw + x] = true;
+            cx[n] = x;
+            cy[n] = y;
+            n++;
+        }
+        return new EdgePoints(cw, ch, threshold, n, cx, cy);
+    }
+
+    /** Point list over existing coordinate arrays (the first count entries are used). */
+    static EdgePoints wrap(int width, int height, int threshold, int count, int[] xs, int[] ys) {
+        return new EdgePoints(width, height, threshold, count, xs, ys);
+    }
+
+}
@@ -2,9 +2,6 @@ import ij.*;
 import ij.process.*;
 import ij.plugin.filter.PlugInFilter;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.measure.Measurements;
-import java.util.*;
 
 public class Elbow_Filter_Plugin implements PlugInFilter {
     ImagePlus imp;
@@ -15,54 +12,36 @@ public class Elbow_Filter_Plugin implements PlugInFilter {
     }
 
     public void run(ImageProcessor ip) {
-        ResultsTable rt = ResultsTable.getResultsTable(); // Use the global table
-        rt.reset(); // Clear previous results
+        PipelineResult result = new PipelineResult();
+        filter(ip, result);
+
+        // Hand the particles to the next stage on this thread, empty when there were fewer than
+        // three; the global table is only a mirror
+        PipelineResult.publish(result);
+        ResultsTable rt = ResultsTable.getResultsTable();
+        result.mirrorPeaks(rt);
+        rt.show("Results");
+    }
 
-        ParticleAnalyzer pa = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE, 
-                                 Measurements.AREA | Measurements.CENTROID, rt, 0, Double.MAX_VALUE);
-        pa.analyze(imp);
+    /** Largest particles of ip up to the elbow of their areas (at most 10) as peaks of out. */
+    public static void filter(ImageProcessor ip, PipelineResult out) {
+        out.clearPeaks("Area");
 
-        int count = rt.getCounter();
-        if (count < 3) return;
+        // Particles straight from the pixels: areas and centroids in primitive arrays
+        ConnectedComponents cc = ConnectedComponents.label(ip, 0);
 
-        // 1. Collect and Sort
-        ArrayList<double[]> data = new ArrayList<>();
-        for (int i = 0; i < count; i++) {
-            data.add(new double[]{rt.getValue("Area", i), rt.getValue("X", i), rt.getValue("Y", i)});
-        }
-        data.sort((a, b) -> Double.compare(b[0], a[0]));
+        int count = cc.count;
+        if (count < 3) return;
 
-        // 2. Find Elbow
-        int elbowIndex = findElbow(data);
+        // 1. Find Elbow on the areas in descending order
+        int elbowIndex = cc.elbow();
         int MAX_COUNT = 10;
         if (elbowIndex > MAX_COUNT) elbowIndex = MAX_COUNT;
-        
-        // 3. REWRITE the Results Table with only the filtered particles
-        rt.reset();
-        for (int i = 0; i < elbowIndex; i++) {
-            rt.incrementCounter();
-            rt.addValue("Area", data.get(i)[0]);
-            rt.addValue("X", data.get(i)[1]);
-            rt.addValue("Y", data.get(i)[2]);
-        }
-        rt.show("Results");
-    }
 
-    private int findElbow(ArrayList<double[]> list) {
-        int n = list.size();
-        double maxDist = -1;
-        int index = 0;
-        double x1 = 0, y1 = list.get(0)[0];
-        double x2 = n - 1, y2 = list.get(n - 1)[0];
+        // 2. Largest particles up to the elbow
+        int[] kept = cc.largest(elbowIndex);
 
-        for (int i = 0; i < n; i++) {
-            double dist = Math.abs((y2 - y1) * i - (x2 - x1) * list.get(i)[0] + x2 * y1 - y2 * x1) 
-                          / Math.sqrt(Math.pow(y2 - y1, 2) + Math.pow(x2 - x1, 2));
-            if (dist > maxDist) {
-                maxDist = dist;
-                index = i;
-            }
-        }
-        return index;
+        // 3. Keep only the filtered particles
+        for (int l : kept) out.addPeak(cc.xCentroid[l], cc.yCentroid[l], cc.area[l]);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,378 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * FFT of any length (mixed radix, Bluestein for large prime factors) with plans cached per
+ * length, and magnitude spectra of real signals and images at their own size.
+ */
+public final class FFTEngine {
+
+    /** Largest prime factor handled by a direct butterfly; lengths with larger ones use Bluestein. */
+    private static final int MAX_RADIX = 13;
+
+    private static final int MAX_CACHED = 16;
+    /** Access-ordered, so the eldest entry is the least recently used plan. */
+    private static final Map<Integer, Plan> PLANS = new LinkedHashMap<Integer, Plan>(MAX_CACHED, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Plan> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    private FFTEngine() {
+    }
+
+    /** Cached plan for transforms of length n. */
+    public static Plan plan(int n) {
+        Plan p;
+        synchronized (PLANS) {
+            p = PLANS.get(n);
+        }
+        if (p == null) {
+            // Built outside the lock: a Bluestein plan creates its power-of-two plan while being built
+            p = new Plan(n);
+            synchronized (PLANS) {
+                Plan previous = PLANS.get(n);
+                if (previous != null) p = previous;
+                else PLANS.put(n, p);
+            }
+        }
+        return p;
+    }
+
+    /** Number of cached plans (at most MAX_CACHED). */
+    public static int cachedPlans() {
+        synchronized (PLANS) {
+            return PLANS.size();
+        }
+    }
+
+    /* -------- Plans -------- */
+
+    public static final class Plan {
+
+        public final int n;
+        /** Radix of each pass, first pass first; empty for Bluestein plans. */
+        final int[] factors;
+        /** Position of input sample i after the digit reversal. */
+        final int[] permutation;
+        /** exp(-2 pi i e / n) = cos[e] - i sin[e]. */
+        final double[] cos;
+        final double[] sin;
+
+        /** Bluestein: chirp w_k = exp(-pi i k^2 / n), transform of the conjugate chirp filter. */
+        final Plan inner;
+        final double[] chirpRe, chirpIm;
+        final double[] filterRe, filterIm;
+
+        Plan(int n) {
+            if (n < 1) throw new IllegalArgumentException("FFT length must be positive: " + n);
+            this.n = n;
+            cos = new double[n];
+            sin = new double[n];
+            for (int e = 0; e < n; e++) {
+                double a = 2 * Math.PI * e / n;
+                cos[e] = Math.cos(a);
+                sin[e] = Math.sin(a);
+            }
+
+            int[] f = factor(n);
+            if (f != null) {
+                factors = f;
+                permutation = new int[n];
+                for (int i = 0; i < n; i++) {
+                    // The last pass splits the input by i mod (its radix) into contiguous blocks
+                    int rest = i, position = 0, block = n;
+                    for (int t = f.length - 1; t >= 0; t--) {
+                        block /= f[t];
+                        position += (rest % f[t]) * block;
+                        rest /= f[t];
+                    }
+                    permutation[i] = position;
+                }
+                inner = null;
+                chirpRe = chirpIm = filterRe = filterIm = null;
+            } else {
+                factors = new int[0];
+                permutation = null;
+                int m = Integer.highestOneBit(2 * n - 1);
+                if (m < 2 * n - 1) m <<= 1;
+                inner = plan(m);
+                chirpRe = new double[n];
+                chirpIm = new double[n];
+                for (int k = 0; k < n; k++) {
+                    // k^2 mod 2n keeps the angle exact for long transforms
+                    long k2 = (long) k * k % (2L * n);
+                    double a = Math.PI * k2 / n;
+                    chirpRe[k] = Math.cos(a);
+                    chirpIm[k] = -Math.sin(a);
+                }
+                filterRe = new double[m];
+                filterIm = new double[m];
+                filterRe[0] = chirpRe[0];
+                filterIm[0] = -chirpIm[0];
+                for (int k = 1; k < n; k++) {
+                    filterRe[k] = filterRe[m - k] = chirpRe[k];
+                    filterIm[k] = filterIm[m - k] = -chirpIm[k];
+                }
+                inner.forward(filterRe, filterIm);
+            }
+        }
+
+        /** Working arrays for transforms of this length; one per thread. */
+        public Scratch newScratch() {
+            return new Scratch(this);
+        }
+
+        /** In-place forward transform X[k] = sum x[j] exp(-2 pi i jk / n). */
+        public void forward(double[] re, double[] im) {
+            forward(re, im, newScratch());
+        }
+
+        /** forward(re, im) with the caller's working arrays, from newScratch(). */
+        public void forward(double[] re, double[] im, Scratch scratch) {
+            if (inner != null) bluestein(re, im, scratch);
+            else cooleyTukey(re, im, scratch);
+        }
+
+        /** In-place inverse transform, scaled by 1 / n. */
+        public void inverse(double[] re, double[] im) {
+            inverse(re, im, newScratch());
+        }
+
+        /** inverse(re, im) with the caller's working arrays. */
+        public void inverse(double[] re, double[] im, Scratch scratch) {
+            for (int k = 0; k < n; k++) im[k] = -im[k];
+            forward(re, im, scratch);
+            double s = 1.0 / n;
+            for (int k = 0; k < n; k++) {
+                re[k] *= s;
+                im[k] = -im[k] * s;
+            }
+        }
+
+        private void cooleyTukey(double[] re, double[] im, Scratch scratch) {
+            double[] tr = scratch.re;
+            double[] ti = scratch.im;
+            for (int i = 0; i < n; i++) {
+                int p = permutation[i];
+                tr[p] = re[i];
+                ti[p] = im[i];
+            }
+            System.arraycopy(tr, 0, re, 0, n);
+            System.arraycopy(ti, 0, im, 0, n);
+
+            double[] xr = scratch.xr;
+            double[] xi = scratch.xi;
+
+            int m = 1;
+            for (int p : factors) {
+                int span = m * p;
+                int stride = n / span;
+                for (int start = 0; start < n; start += span) {
+                    for (int k = 0; k < m; k++) {
+                        // Twiddled inputs x_j = a[start + k + j m] * W_span^(j k)
+                        for (int j = 0; j < p; j++) {
+                            int idx = start + k + j * m;
+                            int e = j * k * stride;
+                            double c = cos[e], s = sin[e];
+                            xr[j] = re[idx] * c + im[idx] * s;
+                            xi[j] = im[idx] * c - re[idx] * s;
+                        }
+                        butterfly(p, xr, xi, re, im, start + k, m);
+                    }
+                }
+                m = span;
+            }
+        }
+
+        /** p-point DFT of (xr, xi) into re / im at base + q * step. */
+        private void butterfly(int p, double[] xr, double[] xi, double[] re, double[] im, int base, int step) {
+            if (p == 2) {
+                re[base] = xr[0] + xr[1];
+                im[base] = xi[0] + xi[1];
+                re[base + step] = xr[0] - xr[1];
+                im[base + step] = xi[0] - xi[1];
+            } else if (p == 4) {
+                double ar = xr[0] + xr[2], ai = xi[0] + xi[2];
+                double br = xr[0] - xr[2], bi = xi[0] - xi[2];
+                double cr = xr[1] + xr[3], ci = xi[1] + xi[3];
+                // -i (x1 - x3)
+                double dr = xi[1] - xi[3], di = xr[3] - xr[1];
+                re[base] = ar + cr;
+                im[base] = ai + ci;
+                re[base + step] = br + dr;
+                im[base + step] = bi + di;
+                re[base + 2 * step] = ar - cr;
+                im[base + 2 * step] = ai - ci;
+                re[base + 3 * step] = br - dr;
+                im[base + 3 * step] = bi - di;
+            } else {
+                int unit = n / p;
+                for (int q = 0; q < p; q++) {
+                    double sr = 0, si = 0;
+                    for (int j = 0; j < p; j++) {
+                        int e = (j * q % p) * unit;
+                        double c = cos[e], s = sin[e];
+                        sr += xr[j] * c + xi[j] * s;
+                        si += xi[j] * c - xr[j] * s;
+                    }
+                    re[base + q * step] = sr;
+                    im[base + q * step] = si;
+                }
+            }
+        }
+
+        private void bluestein(double[] re, double[] im, Scratch scratch) {
+            int m = inner.n;
+            double[] ar = scratch.re;
+            double[] ai = scratch.im;
+            for (int k = 0; k < n; k++) {
+                ar[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+                ai[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+            }
+            // The chirp is zero-padded to m
+            Arrays.fill(ar, n, m, 0);
+            Arrays.fill(ai, n, m, 0);
+            inner.forward(ar, ai, scratch.inner);
+            for (int k = 0; k < m; k++) {
+                double r = ar[k] * filterRe[k] - ai[k] * filterIm[k];
+                ai[k] = ar[k] * filterIm[k] + ai[k] * filterRe[k];
+                ar[k] = r;
+            }
+            inner.inverse(ar, ai, scratch.inner);
+            for (int k = 0; k < n; k++) {
+                re[k] = ar[k] * chirpRe[k] - ai[k] * chirpIm[k];
+                im[k] = ar[k] * chirpIm[k] + ai[k] * chirpRe[k];
+            }
+        }
+    }
+
+    /**
+     * Working arrays of one plan: the permutation buffer (the padded chirp for Bluestein), the
+     * butterfly inputs, and the scratch of the inner power-of-two plan.
+     */
+    public static final class Scratch {
+
+        final double[] re, im;
+        final double[] xr, xi;
+        final Scratch inner;
+
+        Scratch(Plan plan) {
+            int length = plan.inner != null ? plan.inner.n : plan.n;
+            re = new double[length];
+            im = new double[length];
+            int maxRadix = 1;
+            for (int p : plan.factors) maxRadix = Math.max(maxRadix, p);
+            xr = new double[maxRadix];
+            xi = new double[maxRadix];
+            inner = plan.inner != null ? plan.inner.newScratch() : null;
+        }
+    }
+
+    /** Radices for n (4s first, then 2, 3, 5, ..), or null when a prime factor exceeds MAX_RADIX. */
+    static int[] factor(int n) {
+        int[] f = new int[32];
+        int count = 0;
+        while (n % 4 == 0) {
+            f[count++] = 4;
+            n /= 4;
+        }
+        for (int p = 2; p <= MAX_RADIX && n > 1; p++) {
+            while (n % p == 0) {
+                f[count++] = p;
+                n /= p;
+            }
+        }
+        if (n > 1) return null;
+        int[] out = new int[count];
+        System.arraycopy(f, 0, out, 0, count);
+        return out;
+    }
+
+    /* -------- Real input -------- */
+
+    /** |X[k]| for k = 0 .. n / 2 of a real signal. */
+    public static double[] magnitude(double[] signal) {
+        int n = signal.length;
+        double[] re = signal.clone();
+        double[] im = new double[n];
+        plan(n).forward(re, im);
+        double[] mag = new double[n / 2 + 1];
+        for (int k = 0; k < mag.length; k++) mag[k] = Math.hypot(re[k], im[k]);
+        return mag;
+    }
+
+    /**
+     * Magnitude of the 2D transform of a real width x height image, centred: frequency (u, v)
+     * is at ((u + width / 2) mod width, (v + height / 2) mod height), so the zero frequency
+     * sits at (width / 2, height / 2) as in ImageJ's FFT window, but the size is the image's.
+     */
+    public static float[] magnitude(float[] pixels, int width, int height, int threads) {
+        int half = width / 2 + 1;
+        // Non-negative horizontal frequencies of every row
+        double[] rowsRe = new double[half * height];
+        double[] rowsIm = new double[half * height];
+        Plan rowPlan = plan(width);
+        int pairs = (height + 1) / 2;
+        int rowBands = Math.min(Parallel.threads(threads), pairs);
+        Parallel.forEach(rowBands, rowBands, b -> {
+            int from = Parallel.bandStart(b, rowBands, pairs);
+            int to = Parallel.bandStart(b + 1, rowBands, pairs);
+            double[] re = new double[width];
+            double[] im = new double[width];
+            Scratch scratch = rowPlan.newScratch();
+            for (int pair = from; pair < to; pair++) {
+                int y = 2 * pair;
+                boolean two = y + 1 < height;
+                for (int x = 0; x < width; x++) {
+                    re[x] = pixels[y * width + x];
+                    im[x] = two ? pixels[(y + 1) * width + x] : 0;
+                }
+                rowPlan.forward(re, im, scratch);
+                // Z = A + iB with A, B real-input spectra: A[k] = (Z[k] + conj Z[-k]) / 2,
+                // B[k] = (Z[k] - conj Z[-k]) / 2i
+                for (int k = 0; k < half; k++) {
+                    int nk = k == 0 ? 0 : width - k;
+                    double zr = re[k], zi = im[k], wr = re[nk], wi = im[nk];
+                    rowsRe[y * half + k] = (zr + wr) / 2;
+                    rowsIm[y * half + k] = (zi - wi) / 2;
+                    if (two) {
+                        rowsRe[(y + 1) * half + k] = (zi + wi) / 2;
+                        rowsIm[(y + 1) * half + k] = (wr - zr) / 2;
+                    }
+                }
+            }
+        });
+
+        // Columns of those frequencies; the negative ones are the point mirror
+        float[] mag = new float[width * height];
+        Plan columnPlan = plan(height);
+        int columnBands = Math.min(Parallel.threads(threads), half);
+        Parallel.forEach(columnBands, columnBands, b -> {
+            int from = Parallel.bandStart(b, columnBands, half);
+            int to = Parallel.bandStart(b + 1, columnBands, half);
+            double[] re = new double[height];
+            double[] im = new double[height];
+            Scratch scratch = columnPlan.newScratch();
+            for (int u = from; u < to; u++) {
+                for (int y = 0; y < height; y++) {
+                    re[y] = rowsRe[y * half + u];
+                    im[y] = rowsIm[y * half + u];
+                }
+                columnPlan.forward(re, im, scratch);
+                int x = (u + width / 2) % width;
+                int mx = (width - u + width / 2) % width;
+                for (int v = 0; v < height; v++) {
+                    float value = (float) Math.hypot(re[v], im[v]);
+                    int y = (v + height / 2) % height;
+                    int my = (height - v + height / 2) % height;
+                    mag[y * width + x] = value;
+                    mag[my * width + mx] = value;
+                }
+            }
+        });
+        return mag;
+    }
+}
@@ -13,9 +13,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * FFTProminentFreqToBoxes
@@ -27,6 +25,8 @@ import java.util.Set;
  * bounding boxes across the line of text and displays/burns them on the target image.
  *
  * Parameters shown in a dialog:
+ *  - Period source: the FFT binary image, or the 1D spectrum of the target's column projection
+ *    (no FFT image needed, and periods are interpolated between frequency bins)
  *  - FFT binary image (open images presented)
  *  - Target image (the original cropped line)
  *  - Center exclusion radius (px) around the FFT center to ignore
@@ -38,21 +38,25 @@ import java.util.Set;
  * Notes / limitations:
  *  - This is a heuristic approach that uses the binary FFT magnitude to find strong frequency bins,
  *    then translates them to an estimated period = targetWidth/(k - center). The plugin then finds
- *    local minima in the column-sum projection of the target image and keeps minima that agree
- *    with the estimated periods.  Finally separators are merged and used to create bounding boxes.
+ *    local minima in the column-sum projection of the target image and keeps the chain of minima
+ *    that best fits the grid of one of the estimated periods (see alignToPeriod).  Finally
+ *    separators are merged and used to create bounding boxes.
  *  - Because many choices are heuristic, you may need to tune dialog parameters.
  */
 public class FFT_Character_Segmenter implements PlugIn {
 
+    static final String[] PERIOD_SOURCES = {"FFT binary image", "Projection spectrum"};
+
     @Override
     public void run(String arg) {
         String[] titles = WindowManager.getImageTitles();
-        if (titles == null || titles.length < 2) {
-            IJ.error("Please open at least two images: the FFT binary magnitude image and the target line image.");
+        if (titles == null || titles.length == 0) {
+            IJ.error("Please open the target line image (and, for the FFT image mode, its binary FFT magnitude image).");
             return;
         }
 
         GenericDialog gd = new GenericDialog("FFT -> Prominent Frequencies -> Boxes");
+        gd.addChoice("Period source:", PERIOD_SOURCES, PERIOD_SOURCES[titles.length < 2 ? 1 : 0]);
         gd.addChoice("FFT binary image:", titles, titles[titles.length - 1]);
         gd.addChoice("Target image:", titles, titles[0]);
         gd.addNumericField("Center exclusion radius (px):", 8, 0);
@@ -63,6 +67,7 @@ public class FFT_Character_Segmenter implements PlugIn {
         gd.showDialog();
         if (gd.wasCanceled()) return;
 
+        boolean fromSpectrum = gd.getNextChoiceIndex() == 1;
         String fftTitle = gd.getNextChoice();
         String targetTitle = gd.getNextChoice();
         int excl = (int) gd.getNextNumber();
@@ -71,106 +76,59 @@ public class FFT_Character_Segmenter implements PlugIn {
         int minBoxW = (int) gd.getNextNumber();
         boolean burn = gd.getNextBoolean();
 
-        ImagePlus fftImp = WindowManager.getImage(fftTitle);
+        ImagePlus fftImp = fromSpectrum ? null : WindowManager.getImage(fftTitle);
         ImagePlus targetImp = WindowManager.getImage(targetTitle);
-        if (fftImp == null || targetImp == null) {
+        if ((fftImp == null && !fromSpectrum) || targetImp == null) {
             IJ.error("Selected images not available.");
             return;
         }
 
-        ImageProcessor fftIp = fftImp.getProcessor().convertToByte(true);
         ImageProcessor targetIp = targetImp.getProcessor().convertToByte(true);
-
-        int fw = fftIp.getWidth();
-        int fh = fftIp.getHeight();
         int tw = targetIp.getWidth();
 
-        int center = fw / 2;
-        int startX = Math.min(fw - 1, center + Math.max(1, excl));
-
-        // Build column sums on FFT (right half) -- white pixels assumed 255
-        double[] colSums = new double[fw - startX];
-        for (int x = startX; x < fw; x++) {
-            double s = 0;
-            for (int y = 0; y < fh; y++) {
-                s += (fftIp.getPixel(x, y) & 0xff) / 255.0; // normalized
-            }
-            colSums[x - startX] = s;
-        }
-
-        // Smooth the colSums mildly with a 3-wide moving average to reduce noise
-        double[] smooth = smooth1D(colSums, 3);
-
-        // Detect peaks (local maxima) that are above mean + std
-        double mean = mean(smooth);
-        double sd = std(smooth, mean);
-        double threshold = mean + sd * 0.5; // gentle threshold
-        List<Integer> peakIndices = findPeaks(smooth, threshold);
-
-        if (peakIndices.isEmpty()) {
-            IJ.log("No peaks detected in FFT right half using threshold; trying lower threshold.");
-            threshold = mean + sd * 0.1;
-            peakIndices = findPeaks(smooth, threshold);
-        }
-
-        // Convert peak indices to absolute FFT x indices
-        List<Integer> peakXs = new ArrayList<>();
-        for (int pi : peakIndices) peakXs.add(startX + pi);
-
-        // Sort peaks by descending strength and keep the most important using an elbow-like method
-        Collections.sort(peakXs, (a, b) -> Double.compare(smooth[b - startX], smooth[a - startX]));
-
-        // Apply a simple elbow: choose top N where N is determined by kneedle on strengths
-        int keepN = determineElbowCount(smooth, peakXs, startX, maxCandidates);
-        if (keepN <= 0) keepN = Math.min(maxCandidates, peakXs.size());
-        List<Integer> kept = peakXs.subList(0, Math.min(keepN, peakXs.size()));
-
-        IJ.log("Detected " + kept.size() + " prominent frequency bins.");
-
-        // Prepare column projection of target image (sums of darkness). Letters are darker on carved rock.
-        double[] colProj = new double[tw];
-        for (int x = 0; x < tw; x++) {
-            double s = 0;
-            for (int y = 0; y < targetIp.getHeight(); y++) {
-                s += 255 - (targetIp.getPixel(x, y) & 0xff); // darker pixels -> larger values
-            }
-            colProj[x] = s;
-        }
+        // Column projection of target image (sums of darkness) and the dark rows of every column, in one pass.
+        // Letters are darker on carved rock.
+        ColumnProfile profile = new ColumnProfile((byte[]) targetIp.getPixels(), tw, targetIp.getHeight());
+        double[] colProj = profile.darkness;
         double projMean = mean(colProj);
         double projSd = std(colProj, projMean);
 
+        // Estimated letter periods in pixels, strongest frequency first
+        double[] periods = fromSpectrum
+                ? projectionPeriods(colProj, excl, maxCandidates)
+                : fftImagePeriods(fftImp.getProcessor().convertToByte(true), tw, excl, maxCandidates);
+
+        IJ.log("Detected " + periods.length + " prominent frequency bins.");
+
         // Find local minima in projection (gaps between letters) -- minima lower than mean - 0.25*sd
-        List<Integer> minima = findLocalMinima(colProj, projMean - projSd * 0.25);
-
-        // For each kept frequency bin compute estimated period and select minima that match period multiples
-        Set<Integer> separators = new HashSet<>();
-        for (int fx : kept) {
-            int delta = fx - center;
-            if (delta == 0) continue;
-            // estimated period in pixels
-            double period = (double) tw / Math.abs(delta);
+        double cut = projMean - projSd * 0.25;
+        int[] minima = findLocalMinima(colProj, cut);
+        double[] weights = minimaWeights(colProj, minima, cut);
+
+        // Align the minima to the periodic grid of each kept frequency and keep the best-scoring alignment
+        int[] separators = new int[0];
+        double bestScore = 0;
+        for (double period : periods) {
             if (period < 6 || period > tw * 2) continue; // ignore nonsense periods
 
-            // collect minima that fit into periodic grid
-            List<Integer> candidatesForThis = pickMinimaByPeriod(minima, period, tw, (int) Math.max(1, Math.round(period * 0.4)));
-            separators.addAll(candidatesForThis);
+            GridAlignment a = alignToPeriod(minima, weights, period, (int) Math.max(1, Math.round(period * 0.4)));
+            if (a.separators.length >= 2 && a.score > bestScore) {
+                bestScore = a.score;
+                separators = a.separators;
+            }
         }
 
         // Fallback: if no separators found, use minima directly but prune
-        if (separators.isEmpty()) {
+        if (separators.length == 0) {
             IJ.log("No separators matched the estimated periods; falling back to minima list.");
-            separators.addAll(minima);
+            separators = minima;
         }
 
-        // Convert to list and sort
-        List<Integer> sepList = new ArrayList<>(separators);
-        Collections.sort(sepList);
-
         // Merge separators that are too close
-        sepList = mergeNearby(sepList, minDist);
+        int[] sepList = mergeNearby(separators, minDist);
 
         // Add bounds at ends
-        if (sepList.isEmpty()) {
+        if (sepList.length == 0) {
             IJ.log("No separators after merging; aborting.");
             return;
         }
@@ -196,17 +154,13 @@ public class FFT_Character_Segmenter implements PlugIn {
             int x0 = Math.max(0, b[0]);
             int x1 = Math.min(tw - 1, b[1]);
             if (x1 - x0 < minBoxW) continue;
-            // compute vertical extent where dark pixels exist inside [x0,x1]
+            // vertical extent where dark pixels exist inside [x0,x1]
             int yMin = targetIp.getHeight();
             int yMax = 0;
             for (int x = x0; x <= x1; x++) {
-                for (int y = 0; y < targetIp.getHeight(); y++) {
-                    int v = targetIp.getPixel(x, y) & 0xff;
-                    if (v < 250) { // not white
-                        if (y < yMin) yMin = y;
-                        if (y > yMax) yMax = y;
-                    }
-                }
+                if (profile.firstDark[x] < 0) continue;
+                if (profile.firstDark[x] < yMin) yMin = profile.firstDark[x];
+                if (profile.lastDark[x] > yMax) yMax = profile.lastDark[x];
             }
             if (yMax < yMin) {
                 // no dark pixels found -- create a small box around midline
@@ -236,6 +190,137 @@ public class FFT_Character_Segmenter implements PlugIn {
         IJ.log("Done. Boxes created: " + overlay.size());
     }
 
+    // ---------- column profile ----------
+
+    /** Pixels below this are "dark" (not white) for the box extents. */
+    static final int DARK_BELOW = 250;
+
+    /**
+     * Everything the segmenter needs from the target's pixels, from one row-major sweep over
+     * the raw 8-bit buffer: the darkness projection (sum of 255 - v) of each column, and the
+     * first and last dark row and number of dark pixels of each column, so that the vertical
+     * extent of a box is a min / max over its columns instead of a rescan of its pixels.
+     */
+    static final class ColumnProfile {
+        final double[] darkness;
+        /** First / last row with a dark pixel, -1 for columns without one. */
+        final int[] firstDark, lastDark;
+        final int[] darkCount;
+
+        ColumnProfile(byte[] pixels, int width, int height) {
+            long[] sums = new long[width];
+            darkness = new double[width];
+            firstDark = new int[width];
+            lastDark = new int[width];
+            darkCount = new int[width];
+            Arrays.fill(firstDark, -1);
+            Arrays.fill(lastDark, -1);
+            for (int y = 0; y < height; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    int v = pixels[row + x] & 0xff;
+                    sums[x] += 255 - v; // darker pixels -> larger values
+                    if (v < DARK_BELOW) {
+                        if (firstDark[x] < 0) firstDark[x] = y;
+                        lastDark[x] = y;
+                        darkCount[x]++;
+                    }
+                }
+            }
+            for (int x = 0; x < width; x++) darkness[x] = sums[x];
+        }
+    }
+
+    // ---------- period estimation ----------
+
+    /**
+     * Periods from the white columns of a binarized FFT magnitude image: column sums on the
+     * right half (beyond the exclusion radius), peaks above mean + sd / 2 (or + sd / 10 when
+     * there are none), kept up to the elbow of their strengths. A bin delta columns from the
+     * centre is a period of targetWidth / delta, which assumes an unpadded spectrum.
+     */
+    private static double[] fftImagePeriods(ImageProcessor fftIp, int targetWidth, int excl, int maxCandidates) {
+        int fw = fftIp.getWidth();
+        int fh = fftIp.getHeight();
+
+        int center = fw / 2;
+        int startX = Math.min(fw - 1, center + Math.max(1, excl));
+
+        // Build column sums on FFT (right half) -- white pixels assumed 255
+        double[] colSums = new double[fw - startX];
+        for (int x = startX; x < fw; x++) {
+            double s = 0;
+            for (int y = 0; y < fh; y++) {
+                s += (fftIp.getPixel(x, y) & 0xff) / 255.0; // normalized
+            }
+            colSums[x - startX] = s;
+        }
+
+        // Smooth the colSums mildly with a 3-wide moving average to reduce noise
+        double[] smooth = smooth1D(colSums, 3);
+
+        List<Integer> kept = strongestPeaks(smooth, maxCandidates);
+        double[] periods = new double[kept.size()];
+        for (int i = 0; i < periods.length; i++) {
+            periods[i] = (double) targetWidth / (startX + kept.get(i) - center);
+        }
+        return periods;
+    }
+
+    /**
+     * Periods from the 1D spectrum of the Hann-windowed column projection, searched from bin excl
+     * up and refined to fractional bins, so they are not limited to W / integer.
+     */
+    static double[] projectionPeriods(double[] colProj, int excl, int maxCandidates) {
+        int n = colProj.length;
+        double m = mean(colProj);
+        double[] signal = new double[n];
+        for (int x = 0; x < n; x++) {
+            double hann = 0.5 - 0.5 * Math.cos(2 * Math.PI * (x + 0.5) / n);
+            signal[x] = (colProj[x] - m) * hann;
+        }
+        double[] magnitude = FFTEngine.magnitude(signal);
+
+        int startK = Math.min(magnitude.length - 1, Math.max(1, excl));
+        double[] band = Arrays.copyOfRange(magnitude, startK, magnitude.length);
+
+        List<Integer> kept = strongestPeaks(band, maxCandidates);
+        double[] periods = new double[kept.size()];
+        for (int i = 0; i < periods.length; i++) {
+            int k = startK + kept.get(i);
+            double a = Math.log(magnitude[k - 1] + 1e-12);
+            double b = Math.log(magnitude[k] + 1e-12);
+            double c = Math.log(magnitude[k + 1] + 1e-12);
+            double den = a - 2 * b + c;
+            double offset = den < 0 ? 0.5 * (a - c) / den : 0;
+            periods[i] = n / (k + Math.max(-0.5, Math.min(0.5, offset)));
+        }
+        return periods;
+    }
+
+    /** Indices of the local maxima of strength, strongest first, up to the elbow of their strengths. */
+    private static List<Integer> strongestPeaks(double[] strength, int maxCandidates) {
+        // Detect peaks (local maxima) that are above mean + std
+        double mean = mean(strength);
+        double sd = std(strength, mean);
+        double threshold = mean + sd * 0.5; // gentle threshold
+        List<Integer> peaks = findPeaks(strength, threshold);
+
+        if (peaks.isEmpty()) {
+            IJ.log("No peaks detected in the spectrum using threshold; trying lower threshold.");
+            threshold = mean + sd * 0.1;
+            peaks = findPeaks(strength, threshold);
+        }
+
+        // Sort peaks by descending strength and keep the most important using an elbow-like method
+        Collections.sort(peaks, (a, b) -> Double.compare(strength[b], strength[a]));
+
+        // Apply a simple elbow: choose top N where N is determined by kneedle on strengths
+        int keepN = determineElbowCount(strength, peaks, 0, maxCandidates);
+        if (keepN <= 0) keepN = Math.min(maxCandidates, peaks.size());
+        return peaks.subList(0, Math.min(keepN, peaks.size()));
+    }
+
     // ---------- utility methods ----------
 
     private static double[] smooth1D(double[] a, int window) {
@@ -307,88 +392,105 @@ public class FFT_Character_Segmenter implements PlugIn {
         return Math.max(1, Math.min(maxCandidates, bestIdx + 1));
     }
 
-    private static List<Integer> findLocalMinima(double[] arr, double belowThreshold) {
-        List<Integer> mins = new ArrayList<>();
+    private static int[] findLocalMinima(double[] arr, double belowThreshold) {
+        int[] mins = new int[arr.length / 2 + 1];
+        int count = 0;
         for (int i = 1; i < arr.length - 1; i++) {
-            if (arr[i] < arr[i - 1] && arr[i] < arr[i + 1] && arr[i] <= belowThreshold) mins.add(i);
+            if (arr[i] < arr[i - 1] && arr[i] < arr[i + 1] && arr[i] <= belowThreshold) mins[count++] = i;
         }
-        return mins;
+        return Arrays.copyOf(mins, count);
     }
 
-    private static List<Integer> pickMinimaByPeriod(List<Integer> minima, double period, int width, int tol) {
-        List<Integer> out = new ArrayList<>();
-        if (minima.isEmpty()) return out;
-        Collections.sort(minima);
-        // attempt to find chains of minima spaced roughly by period
-        for (int startIdx = 0; startIdx < minima.size(); startIdx++) {
-            int seed = minima.get(startIdx);
-            List<Integer> chain = new ArrayList<>();
-            chain.add(seed);
-            int last = seed;
-            for (int j = startIdx + 1; j < minima.size(); j++) {
-                int cand = minima.get(j);
-                int diff = cand - last;
-                if (Math.abs(diff - period) <= Math.max(tol, period * 0.35)) {
-                    chain.add(cand);
-                    last = cand;
-                } else if (diff > period * 1.5) {
-                    // gap too large - break chain
-                    break;
-                }
-            }
-            if (chain.size() >= 2) {
-                out.addAll(chain);
-            }
+    /** Depth of each minimum below the cut, mapped to (0.5, 1]: 1 for the deepest. */
+    private static double[] minimaWeights(double[] proj, int[] minima, double cut) {
+        double deepest = cut;
+        for (int x : minima) deepest = Math.min(deepest, proj[x]);
+        double[] w = new double[minima.length];
+        for (int i = 0; i < minima.length; i++) {
+            w[i] = cut > deepest ? 0.5 + 0.5 * (cut - proj[minima[i]]) / (cut - deepest) : 1;
+        }
+        return w;
+    }
+
+    /** Score of a missed grid position bridged by a two-period step. */
+    private static final double MISSED_SEPARATOR = 0.5;
+
+    /** Best chain of minima on a periodic grid and its score. */
+    static final class GridAlignment {
+        final int[] separators;
+        final double score;
+
+        GridAlignment(int[] separators, double score) {
+            this.separators = separators;
+            this.score = score;
         }
-        // As a fallback, if out is empty but minima exist, pick minima roughly at intervals of period
-        if (out.isEmpty()) {
-            double p = period;
-            double pos = p / 2.0;
-            while (pos < width) {
-                // pick nearest minima to pos
-                int best = -1;
-                double bestd = Double.MAX_VALUE;
-                for (int m : minima) {
-                    double d = Math.abs(m - pos);
-                    if (d < bestd) {
-                        bestd = d;
-                        best = m;
+    }
+
+    /**
+     * Best-scoring chain of minima spaced one period apart (or two, at a cost of
+     * MISSED_SEPARATOR) within max(tol, 0.35 period), by a Viterbi pass whose predecessor
+     * windows are scanned with monotonic deques, O(m) per period.
+     */
+    static GridAlignment alignToPeriod(int[] minima, double[] weights, double period, int tol) {
+        int m = minima.length;
+        double t = Math.max(tol, period * 0.35);
+        double[] best = new double[m];
+        int[] prev = new int[m];
+        int[][] deque = new int[2][m];
+        int[] head = new int[2], tail = new int[2], next = new int[2];
+        int end = -1;
+        for (int j = 0; j < m; j++) {
+            double score = 0;
+            int from = -1;
+            for (int k = 0; k < 2; k++) {
+                int[] d = deque[k];
+                double shift = (k + 1) * period;
+                // Admit predecessors up to m[j] - shift + t, drop those before m[j] - shift - t
+                while (next[k] < j && minima[next[k]] <= minima[j] - shift + t) {
+                    int i = next[k]++;
+                    while (tail[k] > head[k] && best[d[tail[k] - 1]] <= best[i]) tail[k]--;
+                    d[tail[k]++] = i;
+                }
+                while (tail[k] > head[k] && minima[d[head[k]]] < minima[j] - shift - t) head[k]++;
+                if (tail[k] > head[k]) {
+                    double s = best[d[head[k]]] - k * MISSED_SEPARATOR;
+                    if (s > score) {
+                        score = s;
+                        from = d[head[k]];
                     }
                 }
-                if (best != -1 && bestd <= Math.max(3, p * 0.35)) out.add(best);
-                pos += p;
             }
+            best[j] = weights[j] + score;
+            prev[j] = from;
+            if (end < 0 || best[j] > best[end]) end = j;
         }
+        if (end < 0) return new GridAlignment(new int[0], 0);
 
-        // clamp to image bounds and deduplicate
-        List<Integer> uniq = new ArrayList<>();
-        Set<Integer> seen = new HashSet<>();
-        for (int v : out) {
-            int vv = Math.max(0, Math.min(width - 1, v));
-            if (!seen.contains(vv)) {
-                uniq.add(vv);
-                seen.add(vv);
-            }
-        }
-        return uniq;
+        int length = 0;
+        for (int i = end; i >= 0; i = prev[i]) length++;
+        int[] chain = new int[length];
+        for (int i = end; i >= 0; i = prev[i]) chain[--length] = minima[i];
+        return new GridAlignment(chain, best[end]);
     }
 
-    private static List<Integer> mergeNearby(List<Integer> vals, int minDist) {
-        if (vals.isEmpty()) return vals;
-        Collections.sort(vals);
-        List<Integer> out = new ArrayList<>();
-        int cur = vals.get(0);
-        for (int i = 1; i < vals.size(); i++) {
-            int v = vals.get(i);
+    private static int[] mergeNearby(int[] vals, int minDist) {
+        if (vals.length == 0) return vals;
+        int[] sorted = vals.clone();
+        Arrays.sort(sorted);
+        int[] out = new int[sorted.length];
+        int count = 0;
+        int cur = sorted[0];
+        for (int i = 1; i < sorted.length; i++) {
+            int v = sorted[i];
             if (v - cur <= minDist) {
                 // merge by averaging
                 cur = (cur + v) / 2;
             } else {
-                out.add(cur);
+                out[count++] = cur;
                 cur = v;
             }
         }
-        out.add(cur);
-        return out;
+        out[count++] = cur;
+        return Arrays.copyOf(out, count);
     }
 }
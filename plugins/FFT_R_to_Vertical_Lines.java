@@ -2,23 +2,26 @@ import ij.IJ;
 import ij.ImagePlus;
 import ij.WindowManager;
 import ij.gui.GenericDialog;
-import ij.measure.Measurements;
-import ij.measure.ResultsTable;
 import ij.plugin.PlugIn;
-import ij.plugin.filter.ParticleAnalyzer;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 
+/**
+ * Draws vertical lines at the periods width / r of the spectrum peaks of a text line crop, found
+ * in a binarized FFT image or directly in its magnitude spectrum (FFTEngine).
+ */
 public class FFT_R_to_Vertical_Lines implements PlugIn {
 
+    static final String[] PEAK_SOURCES = {"FFT binary mask", "Magnitude spectrum"};
+
     public void run(String arg) {
 
         int[] ids = WindowManager.getIDList();
-        if (ids == null || ids.length < 2) {
-            IJ.showMessage("Error", "Open at least two images:\n1) original cropped image\n2) FFT binary mask");
+        if (ids == null) {
+            IJ.showMessage("Error", "Open the original cropped image\n(and, for the mask mode, its FFT binary mask)");
             return;
         }
 
@@ -28,101 +31,56 @@ public class FFT_R_to_Vertical_Lines implements PlugIn {
         }
 
         GenericDialog gd = new GenericDialog("FFT → Vertical Lines");
-        gd.addChoice("Original (spatial) image:", titles, titles[titles.length - 2]);
+        gd.addChoice("Peak source:", PEAK_SOURCES, PEAK_SOURCES[ids.length < 2 ? 1 : 0]);
+        gd.addChoice("Original (spatial) image:", titles, titles[Math.max(0, titles.length - 2)]);
         gd.addChoice("FFT binary mask image:", titles, titles[titles.length - 1]);
         gd.addCheckbox("Keep only horizontal features:", true);
         gd.addNumericField("Angle tolerance (degrees):", 15, 0);
         gd.addNumericField("Deduplicate r tolerance (pixels):", 8, 1);
         gd.addNumericField("Minimum period (pixels):", 5, 0);
+        gd.addNumericField("Saturated (% of spectrum, spectrum mode):", 0.35, 2);
+        gd.addNumericField("Threads (0 = all cores):", 0, 0);
         gd.showDialog();
         if (gd.wasCanceled()) return;
 
+        boolean fromSpectrum = gd.getNextChoiceIndex() == 1;
         ImagePlus orig = WindowManager.getImage(gd.getNextChoice());
         ImagePlus mask = WindowManager.getImage(gd.getNextChoice());
         boolean filterByAngle = gd.getNextBoolean();
         double angleTol = gd.getNextNumber();
         double rTol = gd.getNextNumber();
         int minPeriod = (int) gd.getNextNumber();
+        double saturated = gd.getNextNumber();
+        int threads = (int) gd.getNextNumber();
 
         int W = orig.getWidth();
         int H = orig.getHeight();
 
-        // --- Analyze FFT peaks ---
-        ResultsTable rt = new ResultsTable();
-        int measurements = Measurements.CENTROID;
-        ParticleAnalyzer pa = new ParticleAnalyzer(
-                ParticleAnalyzer.SHOW_NONE,
-                measurements,
-                rt,
-                0,
-                Double.POSITIVE_INFINITY
-        );
-
-        pa.analyze(mask);
-
-        int n = rt.getCounter();
-        if (n == 0) {
-            IJ.showMessage("No FFT peaks found.");
-            return;
-        }
-
-        double cx = mask.getWidth() / 2.0;
-        double cy = mask.getHeight() / 2.0;
-
-        ArrayList<Double> rVals = new ArrayList<>();
-
-        for (int i = 0; i < n; i++) {
-            double x = rt.getValue("X", i);
-            double y = rt.getValue("Y", i);
-            double dx = x - cx;
-            double dy = y - cy;
-
-            double r = Math.sqrt(dx * dx + dy * dy);
-            double theta = Math.toDegrees(Math.atan2(dy, dx));
-
-            if (filterByAngle) {
-                double d = Math.abs(Math.abs(theta) - 90.0);
-                if (d > angleTol) continue;
-            }
-
-            rVals.add(r);
-        }
+        double[] rVals = fromSpectrum
+                ? spectrumRadii(orig.getProcessor(), filterByAngle, angleTol, saturated, threads)
+                : maskRadii(mask, filterByAngle, angleTol);
+        if (rVals == null) return;
 
-        if (rVals.isEmpty()) {
+        if (rVals.length == 0) {
             IJ.showMessage("No peaks survived angle filtering.");
             return;
         }
 
-        // --- Deduplicate r values ---
-        Collections.sort(rVals);
-        ArrayList<Double> uniqueR = new ArrayList<>();
-
-        double acc = rVals.get(0);
-        int cnt = 1;
-
-        for (int i = 1; i < rVals.size(); i++) {
-            if (Math.abs(rVals.get(i) - acc / cnt) <= rTol) {
-                acc += rVals.get(i);
-                cnt++;
-            } else {
-                uniqueR.add(acc / cnt);
-                acc = rVals.get(i);
-                cnt = 1;
-            }
-        }
-        uniqueR.add(acc / cnt);
+        double[] uniqueR = mergeRadii(rVals, rTol);
 
         // --- Convert r → spatial period ---
-        ArrayList<Integer> periods = new ArrayList<>();
+        int[] periods = new int[uniqueR.length];
+        int count = 0;
         for (double r : uniqueR) {
             if (r <= 0) continue;
             int p = (int) Math.round((double) W / r);
             if (p >= minPeriod && p < W / 2) {
-                periods.add(p);
+                periods[count++] = p;
             }
         }
+        periods = Arrays.copyOf(periods, count);
 
-        if (periods.isEmpty()) {
+        if (count == 0) {
             IJ.showMessage("No valid spatial periods found.");
             return;
         }
@@ -156,6 +114,121 @@ public class FFT_R_to_Vertical_Lines implements PlugIn {
 
         new ImagePlus("Original_with_lines", cp).show();
 
-        IJ.showStatus("Detected " + periods.size() + " dominant spacings.");
+        IJ.showStatus("Detected " + periods.length + " dominant spacings.");
+    }
+
+    /** Distances from the centre of the blob (value 255) centroids of the binary FFT mask; null if none. */
+    private static double[] maskRadii(ImagePlus mask, boolean filterByAngle, double angleTol) {
+        ConnectedComponents cc = ConnectedComponents.label(mask.getProcessor(), 0);
+
+        int n = cc.count;
+        if (n == 0) {
+            IJ.showMessage("No FFT peaks found.");
+            return null;
+        }
+
+        double cx = mask.getWidth() / 2.0;
+        double cy = mask.getHeight() / 2.0;
+
+        double[] rVals = new double[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = cc.xCentroid[i] - cx;
+            double dy = cc.yCentroid[i] - cy;
+            if (filterByAngle && !nearVertical(dx, dy, angleTol)) continue;
+            rVals[count++] = Math.sqrt(dx * dx + dy * dy);
+        }
+        return Arrays.copyOf(rVals, count);
+    }
+
+    /**
+     * Sub-pixel distances from the centre of the local maxima among the brightest saturated / 2
+     * percent of the magnitude (what Enhance Contrast maps to 255); null if there are none.
+     */
+    static double[] spectrumRadii(ImageProcessor ip, boolean filterByAngle, double angleTol,
+                                  double saturated, int threads) {
+        int w = ip.getWidth();
+        int h = ip.getHeight();
+        float[] m = (float[]) FFT_Spectrum.spectrum(ip, threads).getPixels();
+        float[] log = new float[m.length];
+        float max = 0;
+        for (int k = 0; k < m.length; k++) {
+            log[k] = (float) Math.log1p(m[k]);
+            if (log[k] > max) max = log[k];
+        }
+        float threshold = brightest(log, max, saturated / 200.0);
+
+        int cx = w / 2, cy = h / 2;
+        double[] rVals = new double[16];
+        int count = 0;
+        int peaks = 0;
+        for (int y = 1; y < h - 1; y++) {
+            for (int x = 1; x < w - 1; x++) {
+                int k = y * w + x;
+                float v = log[k];
+                if (v < threshold || (x == cx && y == cy)) continue;
+                if (v <= log[k - 1] || v < log[k + 1]
+                        || v <= log[k - w - 1] || v <= log[k - w] || v <= log[k - w + 1]
+                        || v < log[k + w - 1] || v < log[k + w] || v < log[k + w + 1]) continue;
+                peaks++;
+                double dx = x + vertex(log[k - 1], v, log[k + 1]) - cx;
+                double dy = y + vertex(log[k - w], v, log[k + w]) - cy;
+                if (filterByAngle && !nearVertical(dx, dy, angleTol)) continue;
+                if (count == rVals.length) rVals = Arrays.copyOf(rVals, 2 * count);
+                rVals[count++] = Math.sqrt(dx * dx + dy * dy);
+            }
+        }
+        if (peaks == 0) {
+            IJ.showMessage("No FFT peaks found.");
+            return null;
+        }
+        return Arrays.copyOf(rVals, count);
+    }
+
+    /** Smallest value among roughly the top fraction of values in [0, max], from a histogram. */
+    private static float brightest(float[] values, float max, double fraction) {
+        int bins = 4096;
+        int[] histogram = new int[bins];
+        double scale = max > 0 ? (bins - 1) / max : 0;
+        for (float v : values) histogram[(int) (v * scale)]++;
+        long wanted = Math.max(1, Math.round(values.length * fraction));
+        long sum = 0;
+        int bin = bins - 1;
+        while (bin > 0 && (sum += histogram[bin]) < wanted) bin--;
+        return (float) (bin / scale);
+    }
+
+    /** Offset in (-0.5, 0.5) of the vertex of the parabola through (-1, a), (0, b), (1, c). */
+    private static double vertex(float a, float b, float c) {
+        double den = a - 2.0 * b + c;
+        if (den >= 0) return 0;
+        return Math.max(-0.5, Math.min(0.5, 0.5 * (a - c) / den));
+    }
+
+    /** Whether (dx, dy) is within tol degrees of the vertical axis. */
+    private static boolean nearVertical(double dx, double dy, double tol) {
+        double theta = Math.toDegrees(Math.atan2(dy, dx));
+        return Math.abs(Math.abs(theta) - 90.0) <= tol;
+    }
+
+    /** Sorts r in place and averages runs whose values lie within tol of the running mean. */
+    static double[] mergeRadii(double[] r, double tol) {
+        Arrays.sort(r);
+        double[] unique = new double[r.length];
+        int count = 0;
+        double acc = r[0];
+        int cnt = 1;
+        for (int i = 1; i < r.length; i++) {
+            if (Math.abs(r[i] - acc / cnt) <= tol) {
+                acc += r[i];
+                cnt++;
+            } else {
+                unique[count++] = acc / cnt;
+                acc = r[i];
+                cnt = 1;
+            }
+        }
+        unique[count++] = acc / cnt;
+        return Arrays.copyOf(unique, count);
     }
 }
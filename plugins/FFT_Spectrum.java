@@ -0,0 +1,83 @@
+import ij.ImagePlus;
+import ij.gui.GenericDialog;
+import ij.plugin.filter.PlugInFilter;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Magnitude spectrum at the image's own size (see FFTEngine), zero frequency at
+ * (width / 2, height / 2); the 8-bit output is scaled like Process > FFT.
+ */
+public class FFT_Spectrum implements PlugInFilter {
+
+    static final String[] OUTPUTS = {"8-bit", "32-bit", "32-bit log"};
+
+    ImagePlus imp;
+
+    public int setup(String arg, ImagePlus imp) {
+        this.imp = imp;
+        return DOES_8G | DOES_16 | DOES_32 | NO_CHANGES;
+    }
+
+    public void run(ImageProcessor ip) {
+
+        GenericDialog gd = new GenericDialog("FFT Spectrum");
+        gd.addChoice("Output:", OUTPUTS, OUTPUTS[0]);
+        gd.addNumericField("Threads (0 = all cores):", 0, 0);
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+
+        int output = gd.getNextChoiceIndex();
+        int threads = (int) gd.getNextNumber();
+
+        ImageProcessor crop = ip.crop();
+        FloatProcessor spectrum = spectrum(crop, threads);
+        ImageProcessor out;
+        if (output == 0) {
+            out = toPowerSpectrum8Bit(spectrum);
+        } else {
+            if (output == 2) {
+                float[] m = (float[]) spectrum.getPixels();
+                for (int k = 0; k < m.length; k++) m[k] = (float) Math.log1p(m[k]);
+            }
+            spectrum.resetMinAndMax();
+            out = spectrum;
+        }
+        new ImagePlus("FFT of " + imp.getShortTitle(), out).show();
+    }
+
+    /** Centred magnitude spectrum, same size as ip. */
+    public static FloatProcessor spectrum(ImageProcessor ip, int threads) {
+        int width = ip.getWidth();
+        int height = ip.getHeight();
+        float[] pixels = (float[]) ip.convertToFloat().getPixels();
+        return new FloatProcessor(width, height, FFTEngine.magnitude(pixels, width, height, threads));
+    }
+
+    /**
+     * log(power) scaled to 1..254 as in ImageJ's FHT.getPowerSpectrum(): at most 50 natural
+     * log units below the maximum are shown, lower values become 1.
+     */
+    static ByteProcessor toPowerSpectrum8Bit(FloatProcessor spectrum) {
+        float[] m = (float[]) spectrum.getPixels();
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for (float v : m) {
+            double power = (double) v * v;
+            if (power < min) min = power;
+            if (power > max) max = power;
+        }
+        max = Math.log(max);
+        min = Math.log(min);
+        if (Double.isNaN(min) || max - min > 50) min = max - 50;
+        double scale = 253.999 / (max - min);
+        ByteProcessor bp = new ByteProcessor(spectrum.getWidth(), spectrum.getHeight());
+        byte[] out = (byte[]) bp.getPixels();
+        for (int k = 0; k < m.length; k++) {
+            double r = (Math.log((double) m[k] * m[k]) - min) * scale;
+            if (Double.isNaN(r) || r < 0) r = 0;
+            out[k] = (byte) (int) (r + 1);
+        }
+        return bp;
+    }
+}
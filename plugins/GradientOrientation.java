@@ -0,0 +1,64 @@
+import ij.process.ImageProcessor;
+
+/**
+ * Line-normal direction in [0, pi) for every edge point, from a structure tensor of Sobel
+ * gradients; NaN where there is no gradient.
+ */
+public final class GradientOrientation {
+
+    private GradientOrientation() {
+    }
+
+    /** Normals from the horizontal/vertical Sobel responses of the 8-bit image around each point. */
+    public static float[] sobel(EdgePoints pts, ImageProcessor ip, int radius) {
+        byte[] pixels = (byte[]) ip.getPixels();
+        int w = ip.getWidth();
+        int h = ip.getHeight();
+        float[] normals = new float[pts.count];
+
+        for (int k = 0; k < pts.count; k++) {
+            int px = pts.xs[k];
+            int py = pts.ys[k];
+            double jxx = 0, jyy = 0, jxy = 0;
+            for (int y = py - radius; y <= py + radius; y++) {
+                for (int x = px - radius; x <= px + radius; x++) {
+                    int ym = clamp(y - 1, h) * w, y0 = clamp(y, h) * w, yp = clamp(y + 1, h) * w;
+                    int xm = clamp(x - 1, w), x0 = clamp(x, w), xp = clamp(x + 1, w);
+                    int gx = (pixels[ym + xp] & 0xff) + 2 * (pixels[y0 + xp] & 0xff) + (pixels[yp + xp] & 0xff)
+                           - (pixels[ym + xm] & 0xff) - 2 * (pixels[y0 + xm] & 0xff) - (pixels[yp + xm] & 0xff);
+                    int gy = (pixels[yp + xm] & 0xff) + 2 * (pixels[yp + x0] & 0xff) + (pixels[yp + xp] & 0xff)
+                           - (pixels[ym + xm] & 0xff) - 2 * (pixels[ym + x0] & 0xff) - (pixels[ym + xp] & 0xff);
+                    jxx += (double) gx * gx;
+                    jyy += (double) gy * gy;
+                    jxy += (double) gx * gy;
+                }
+            }
+            normals[k] = jxx + jyy == 0 ? Float.NaN : fold(0.5 * Math.atan2(2 * jxy, jxx - jyy));
+        }
+        return normals;
+    }
+
+    /**
+     * Normals read from a gradient-direction image in degrees (for example atan2(gy, gx) of the
+     * Sobel responses of step 2), sampled at each point.
+     */
+    public static float[] fromImage(EdgePoints pts, ImageProcessor directionDegrees) {
+        float[] normals = new float[pts.count];
+        for (int k = 0; k < pts.count; k++) {
+            float deg = directionDegrees.getPixelValue(pts.xs[k], pts.ys[k]);
+            normals[k] = Float.isNaN(deg) ? Float.NaN : fold(Math.toRadians(deg));
+        }
+        return normals;
+    }
+
+    /** Angle modulo pi, in [0, pi). */
+    private static float fold(double t) {
+        t %= Math.PI;
+        if (t < 0) t += Math.PI;
+        return (float) t;
+    }
+
+    private static int clamp(int v, int size) {
+        return v < 0 ? 0 : (v >= size ? size - 1 : v);
+    }
+}
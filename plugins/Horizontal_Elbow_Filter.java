@@ -2,9 +2,7 @@ import ij.*;
 import ij.process.*;
 import ij.plugin.filter.PlugInFilter;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.measure.Measurements;
-import java.util.*;
+import java.util.Arrays;
 
 public class Horizontal_Elbow_Filter implements PlugInFilter {
     ImagePlus imp;
@@ -15,16 +13,31 @@ public class Horizontal_Elbow_Filter implements PlugInFilter {
     }
 
     public void run(ImageProcessor ip) {
-        ResultsTable rt = new ResultsTable(); 
-        rt.reset();
+        PipelineResult result = new PipelineResult();
+        boolean found = filter(ip, result);
 
-        // Standard Particle Analysis
-        ParticleAnalyzer pa = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE, 
-                                 Measurements.AREA | Measurements.CENTROID, rt, 0, Double.MAX_VALUE);
-        pa.analyze(imp);
+        // Hand the lines to Hough_To_BoundingBox on this thread, empty when none were found so
+        // it does not box an earlier image's lines; the global table is only a mirror
+        PipelineResult.publish(result);
+        ResultsTable globalRt = ResultsTable.getResultsTable();
+        result.mirrorPeaks(globalRt);
+        globalRt.show("Results");
+        if (found) IJ.log("Kept " + result.peakCount() + " particles representing horizontal lines.");
+    }
+
+    /**
+     * Particles of ip whose centroid lies within 5% of the image centre in x, largest first up
+     * to the elbow of their areas (at most 10), as peaks of out. False when fewer than two
+     * particles pass the x filter.
+     */
+    public static boolean filter(ImageProcessor ip, PipelineResult out) {
+        out.clearPeaks("Area");
 
-        int count = rt.getCounter();
-        if (count == 0) return;
+        // Particles straight from the pixels: areas and centroids in primitive arrays
+        ConnectedComponents cc = ConnectedComponents.label(ip, 0);
+
+        int count = cc.count;
+        if (count == 0) return false;
 
         // 1. Define the "Horizontal" Filter Range (Center X +/- 5%)
         double imgWidth = ip.getWidth();
@@ -36,64 +49,30 @@ public class Horizontal_Elbow_Filter implements PlugInFilter {
         IJ.log(String.format("Filtering for Horizontal Lines: X must be between %.2f and %.2f", lowerBound, upperBound));
 
         // 2. Filter Particles by X-Coordinate
-        ArrayList<double[]> filteredData = new ArrayList<>();
-        for (int i = 0; i < count; i++) {
-            double x = rt.getValue("X", i);
-            if (x >= lowerBound && x <= upperBound) {
-                filteredData.add(new double[]{
-                    rt.getValue("Area", i), 
-                    x, 
-                    rt.getValue("Y", i)
-                });
-            }
+        int[] filtered = new int[count];
+        int n = 0;
+        for (int l = 0; l < count; l++) {
+            double x = cc.xCentroid[l];
+            if (x >= lowerBound && x <= upperBound) filtered[n++] = l;
         }
+        filtered = Arrays.copyOf(filtered, n);
 
-        if (filteredData.size() < 2) {
+        if (n < 2) {
             IJ.log("No horizontal particles found within the 5% center range.");
-            return;
+            return false;
         }
 
-        // 3. Sort by Area (Descending)
-        filteredData.sort((a, b) -> Double.compare(b[0], a[0]));
-
-        // 4. Find Elbow within the filtered list
-        int elbowIndex = findElbow(filteredData);
+        // 3. Find Elbow on the filtered areas in descending order
+        int elbowIndex = n < 3 ? n - 1 : cc.elbow(filtered);
         
         // Apply your MAX_COUNT limit (e.g., max 10 lines)
         int MAX_COUNT = 10;
-        int finalCount = Math.min(elbowIndex + 1, Math.min(MAX_COUNT, filteredData.size()));
-
-        // 5. Update Global Results Table for the next plugin
-        ResultsTable globalRt = ResultsTable.getResultsTable();
-        globalRt.reset();
-        for (int i = 0; i < finalCount; i++) {
-            globalRt.incrementCounter();
-            globalRt.addValue("Area", filteredData.get(i)[0]);
-            globalRt.addValue("X", filteredData.get(i)[1]);
-            globalRt.addValue("Y", filteredData.get(i)[2]);
-        }
-        
-        globalRt.show("Results");
-        IJ.log("Kept " + finalCount + " particles representing horizontal lines.");
-    }
+        int finalCount = Math.min(elbowIndex + 1, Math.min(MAX_COUNT, n));
 
-    private int findElbow(ArrayList<double[]> list) {
-        int n = list.size();
-        if (n < 3) return n - 1;
-        
-        double maxDist = -1;
-        int index = 0;
-        double x1 = 0, y1 = list.get(0)[0];
-        double x2 = n - 1, y2 = list.get(n - 1)[0];
+        // 4. Largest filtered particles, largest first
+        int[] kept = cc.largest(filtered, finalCount);
 
-        for (int i = 0; i < n; i++) {
-            double dist = Math.abs((y2 - y1) * i - (x2 - x1) * list.get(i)[0] + x2 * y1 - y2 * x1) 
-                          / Math.sqrt(Math.pow(y2 - y1, 2) + Math.pow(x2 - x1, 2));
-            if (dist > maxDist) {
-                maxDist = dist;
-                index = i;
-            }
-        }
-        return index;
+        for (int l : kept) out.addPeak(cc.xCentroid[l], cc.yCentroid[l], cc.area[l]);
+        return true;
     }
-}
\ No newline at end of file
+}
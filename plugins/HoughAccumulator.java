@@ -0,0 +1,498 @@
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Vote counts of the line Hough transform r = col * cos(t) + row * sin(t), (col, row) relative to
+ * the image centre, laid out like the Hough_Transform image: x = theta bin, y = rho bin.
+ */
+public class HoughAccumulator {
+
+    /** Fewest theta columns per voting worker. */
+    static final int MIN_COLUMNS = 8;
+
+    final int imageWidth;
+    final int imageHeight;
+    final int thetaBins;
+    final int rhoBins;
+    final double thetaMin;
+    final double dTheta;
+    final double dRho;
+    final double rMax2;
+
+    /** cell(rho * thetaBins + theta) */
+    final Cells cells;
+
+    private final TrigTable trig;
+
+    /**
+     * Same geometry as the original Hough_Transform: one theta bin per image column and
+     * one rho bin per pixel of the image diagonal.
+     */
+    public static HoughAccumulator forImage(int width, int height) {
+        return new HoughAccumulator(width, height, width, (int) Math.hypot(height, width));
+    }
+
+    /**
+     * Window of thetaBins bins of width dTheta centred on thetaCenter (pi/2 for horizontal
+     * lines), with the full-space rho geometry. The bin count is odd so thetaCenter is a bin.
+     *
+     * @param dTheta bin width in radians, 0 = same as the full-space accumulator (pi / width)
+     */
+    public static HoughAccumulator forWindow(int width, int height,
+                                             double thetaCenter, double halfWidth, double dTheta) {
+        return forWindow(width, height, thetaCenter, halfWidth, dTheta, 0, false);
+    }
+
+    /**
+     * @param rhoBins number of rho bins, 0 = one per pixel of the image diagonal
+     * @param compact store votes as char[] with overflow promotion instead of int[]
+     */
+    public static HoughAccumulator forWindow(int width, int height, double thetaCenter, double halfWidth,
+                                             double dTheta, int rhoBins, boolean compact) {
+        if (dTheta <= 0) dTheta = Math.PI / width;
+        if (rhoBins <= 0) rhoBins = (int) Math.hypot(height, width);
+        int half = Math.max(0, (int) Math.round(halfWidth / dTheta));
+        return new HoughAccumulator(width, height, thetaCenter - half * dTheta, dTheta,
+                2 * half + 1, rhoBins, compact);
+    }
+
+    public HoughAccumulator(int imageWidth, int imageHeight, int thetaBins, int rhoBins) {
+        this(imageWidth, imageHeight, thetaBins, rhoBins, false);
+    }
+
+    /** Full [0, pi) space with the given bin counts. */
+    public HoughAccumulator(int imageWidth, int imageHeight, int thetaBins, int rhoBins, boolean compact) {
+        this(imageWidth, imageHeight, 0, Math.PI / thetaBins, thetaBins, rhoBins, compact);
+    }
+
+    public HoughAccumulator(int imageWidth, int imageHeight,
+                            double thetaMin, double dTheta, int thetaBins, int rhoBins, boolean compact) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.thetaBins = thetaBins;
+        this.rhoBins = rhoBins;
+        this.thetaMin = thetaMin;
+        this.dTheta = dTheta;
+        double rMax = Math.hypot(imageWidth, imageHeight);
+        this.dRho = rMax / rhoBins;
+        this.rMax2 = rMax / 2.0;
+        int size = thetaBins * rhoBins;
+        this.cells = compact ? new CompactCells(size) : new IntCells(size);
+        this.trig = TrigTable.get(thetaBins, thetaMin, dTheta, dRho, rMax2);
+    }
+
+    /** Bytes per cell of the int[] / compact storage, for sizing against a memory budget. */
+    public static int bytesPerCell(boolean compact) {
+        return compact ? 2 : 4;
+    }
+
+    public int getThetaBins() {
+        return thetaBins;
+    }
+
+    public int getRhoBins() {
+        return rhoBins;
+    }
+
+    /** Theta (radians) of bin i. */
+    public double theta(int i) {
+        return thetaMin + i * dTheta;
+    }
+
+    public boolean isWindowed() {
+        return thetaMin != 0 || thetaBins * dTheta < Math.PI - 1e-9;
+    }
+
+    /** Rho (pixels, relative to the image centre) of bin j. */
+    public double rho(int j) {
+        return j * dRho - rMax2;
+    }
+
+    public int get(int theta, int rho) {
+        return cells.get(rho * thetaBins + theta);
+    }
+
+    public boolean isCompact() {
+        return cells instanceof CompactCells;
+    }
+
+    public void clear() {
+        cells.clear();
+    }
+
+    /* -------- Voting -------- */
+
+    /** Every pixel of the 8-bit image brighter than threshold votes over all theta bins. */
+    public void voteImage(ImageProcessor ip, int threshold) {
+        votePoints(EdgePoints.extract(ip, threshold), 1);
+    }
+
+    /**
+     * Votes every point of the list over all theta bins, split across workers by theta
+     * columns (see {@link #voteParallel}).
+     *
+     * @param threads number of workers, 0 = all cores
+     */
+    public void votePoints(EdgePoints pts, int threads) {
+        voteParallel(pts.count, threads, (iLo, iHi) -> {
+            int w2 = imageWidth / 2;
+            int h2 = imageHeight / 2;
+            for (int k = 0; k < pts.count; k++) {
+                cells.votePoint(trig, pts.xs[k] - w2, pts.ys[k] - h2, iLo, iHi, 0, rhoBins - 1);
+            }
+        });
+    }
+
+    /**
+     * Gradient-guided voting: point k only votes the theta bins within band radians of its
+     * line normal normals[k] (modulo pi), instead of all theta bins. Points with a NaN normal
+     * vote every bin, and so does every point once the band covers pi (2 * band >= pi).
+     *
+     * @param normals normal direction of every point in [0, pi), see {@link GradientOrientation}
+     */
+    public void voteGuided(EdgePoints pts, float[] normals, double band, int threads) {
+        // Wider bands would make the windows of neighbouring turns overlap and vote cells twice
+        boolean all = 2 * band >= Math.PI;
+        voteParallel(pts.count, threads, (iLo, iHi) -> {
+            int w2 = imageWidth / 2;
+            int h2 = imageHeight / 2;
+            for (int k = 0; k < pts.count; k++) {
+                int col = pts.xs[k] - w2;
+                int row = pts.ys[k] - h2;
+                if (all || Float.isNaN(normals[k])) {
+                    cells.votePoint(trig, col, row, iLo, iHi, 0, rhoBins - 1);
+                    continue;
+                }
+                // The same line normal is reached at t - pi and t + pi (with rho negated)
+                for (int turn = -1; turn <= 1; turn++) {
+                    double t = normals[k] + turn * Math.PI;
+                    int lo = Math.max(iLo, (int) Math.ceil((t - band - thetaMin) / dTheta));
+                    int hi = Math.min(iHi, (int) Math.floor((t + band - thetaMin) / dTheta));
+                    cells.votePoint(trig, col, row, lo, hi, 0, rhoBins - 1);
+                }
+            }
+        });
+    }
+
+    /** Votes all points into the theta bins [iLo, iHi] of this accumulator. */
+    interface ColumnVoter {
+        void vote(int iLo, int iHi);
+    }
+
+    /**
+     * Splits the theta bins into one band of at least MIN_COLUMNS columns per worker; each worker
+     * votes all count points into its own columns only, so no locks or private copies are needed.
+     */
+    void voteParallel(int count, int threads, ColumnVoter voter) {
+        int n = Math.min(Math.min(Parallel.threads(threads), Math.max(1, count / 256)),
+                Math.max(1, thetaBins / MIN_COLUMNS));
+        if (n <= 1) {
+            voter.vote(0, thetaBins - 1);
+            return;
+        }
+        Parallel.forEach(n, n, b -> voter.vote(Parallel.bandStart(b, n, thetaBins),
+                Parallel.bandStart(b + 1, n, thetaBins) - 1));
+    }
+
+    /** Votes points [from, to) of the list, split by theta columns like votePoints. */
+    void votePointRange(EdgePoints pts, int from, int to, int threads) {
+        voteParallel(to - from, threads, (iLo, iHi) -> {
+            int w2 = imageWidth / 2;
+            int h2 = imageHeight / 2;
+            for (int k = from; k < to; k++) {
+                votePoint(pts.xs[k] - w2, pts.ys[k] - h2, iLo, iHi, 0, rhoBins - 1);
+            }
+        });
+    }
+
+    /**
+     * Takes back the votes of every point of the list, for points that dropped out of the
+     * foreground (see {@link IncrementalHough}). The points must have been voted before.
+     */
+    public void removePoints(EdgePoints pts) {
+        int w2 = imageWidth / 2;
+        int h2 = imageHeight / 2;
+        for (int k = 0; k < pts.count; k++) {
+            cells.removePoint(trig, pts.xs[k] - w2, pts.ys[k] - h2, thetaBins - 1, rhoBins - 1);
+        }
+    }
+
+    /** Votes of the point (col, row) restricted to the cell rectangle [iLo, iHi] x [jLo, jHi]. */
+    void votePoint(int col, int row, int iLo, int iHi, int jLo, int jHi) {
+        cells.votePoint(trig, col, row, iLo, iHi, jLo, jHi);
+    }
+
+    /** Multiplies every cell by factor (rounded), e.g. to extrapolate votes of a sample. */
+    public void scale(double factor) {
+        for (int k = 0; k < cells.size(); k++) {
+            cells.set(k, (int) Math.round(cells.get(k) * factor));
+        }
+    }
+
+    /* -------- Output -------- */
+
+    /**
+     * Numeric value of a key=value line (theta_min, theta_step, rho_step, ..) in the Info that
+     * Hough_Transform records on its image, or defaultValue when the line is missing.
+     */
+    public static double infoValue(ImagePlus imp, String key, double defaultValue) {
+        String info = imp.getInfoProperty();
+        if (info == null) return defaultValue;
+        for (String line : info.split("\n")) {
+            if (line.startsWith(key + "=")) {
+                try {
+                    return Double.parseDouble(line.substring(key.length() + 1).trim());
+                } catch (NumberFormatException e) {
+                    return defaultValue;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Maps a windowed accumulator back to the full [0, pi) layout of the original Hough image
+     * (one column per image column) so peak and bounding-box plugins that look around
+     * x = width / 2 keep working. Each full-space column takes the maximum of the window bins
+     * that fall into it, or the nearest bin when the window is coarser; columns outside the
+     * window stay empty.
+     */
+    public HoughAccumulator toFullSpace() {
+        HoughAccumulator full = new HoughAccumulator(imageWidth, imageHeight, imageWidth, rhoBins, isCompact());
+        double dFull = full.dTheta;
+        for (int x = 0; x < imageWidth; x++) {
+            double t = x * dFull;
+            int iLo = (int) Math.ceil((t - dFull / 2 - thetaMin) / dTheta);
+            int iHi = (int) Math.ceil((t + dFull / 2 - thetaMin) / dTheta) - 1;
+            if (iLo > iHi) iLo = iHi = (int) Math.round((t - thetaMin) / dTheta);
+            iLo = Math.max(iLo, 0);
+            iHi = Math.min(iHi, thetaBins - 1);
+            if (iLo > iHi) continue;
+            for (int j = 0; j < rhoBins; j++) {
+                int max = 0;
+                for (int i = iLo; i <= iHi; i++) {
+                    max = Math.max(max, cells.get(j * thetaBins + i));
+                }
+                full.cells.set(j * imageWidth + x, max);
+            }
+        }
+        return full;
+    }
+
+    public int getMaxVote() {
+        int max = 0;
+        for (int k = 0; k < cells.size(); k++)
+            max = Math.max(max, cells.get(k));
+        return max;
+    }
+
+    /**
+     * 8-bit Hough image. With normalize the votes are scaled so the strongest cell is 255
+     * (the original Hough_Transform output); otherwise counts above 255 saturate.
+     */
+    public ByteProcessor toByteProcessor(boolean normalize) {
+        byte[] out = new byte[cells.size()];
+        if (normalize) {
+            int maxVote = getMaxVote();
+            double scale = maxVote == 0 ? 0 : 255.0 / maxVote;
+            for (int k = 0; k < out.length; k++) {
+                out[k] = (byte) (int) (cells.get(k) * scale);
+            }
+        } else {
+            for (int k = 0; k < out.length; k++) {
+                out[k] = (byte) Math.min(cells.get(k), 255);
+            }
+        }
+        return new ByteProcessor(thetaBins, rhoBins, out);
+    }
+
+    /** 16-bit Hough image holding the raw vote counts (saturating at 65535). */
+    public ShortProcessor toShortProcessor() {
+        short[] out = new short[cells.size()];
+        for (int k = 0; k < out.length; k++) {
+            out[k] = (short) Math.min(cells.get(k), 65535);
+        }
+        return new ShortProcessor(thetaBins, rhoBins, out, null);
+    }
+
+    /** 32-bit Hough image holding the raw vote counts. */
+    public FloatProcessor toFloatProcessor() {
+        float[] out = new float[cells.size()];
+        for (int k = 0; k < out.length; k++) {
+            out[k] = cells.get(k);
+        }
+        return new FloatProcessor(thetaBins, rhoBins, out, null);
+    }
+
+    /**
+     * Vote storage. The voting loop is implemented per storage type so the inner loop over
+     * theta bins stays a tight primitive array update.
+     */
+    abstract static class Cells {
+
+        abstract int size();
+
+        abstract int get(int k);
+
+        abstract void set(int k, int v);
+
+        abstract void clear();
+
+        /** One vote per theta bin in [iLo, iHi] for the point (col, row), kept if rho is in [jLo, jHi]. */
+        abstract void votePoint(TrigTable trig, int col, int row, int iLo, int iHi, int jLo, int jHi);
+
+        /** Inverse of votePoint over all theta bins [0, iHi] and rho bins [0, jHi]. */
+        abstract void removePoint(TrigTable trig, int col, int row, int iHi, int jHi);
+    }
+
+    static final class IntCells extends Cells {
+
+        final int[] v;
+
+        IntCells(int size) {
+            v = new int[size];
+        }
+
+        int size() { return v.length; }
+
+        int get(int k) { return v[k]; }
+
+        void set(int k, int value) { v[k] = value; }
+
+        void clear() { Arrays.fill(v, 0); }
+
+        void votePoint(TrigTable trig, int col, int row, int iLo, int iHi, int jLo, int jHi) {
+            double[] cos = trig.cos;
+            double[] sin = trig.sin;
+            double offset = trig.offset;
+            int[] v = this.v;
+            int n = cos.length;
+            for (int i = iLo; i <= iHi; i++) {
+                int j = (int) (col * cos[i] + row * sin[i] + offset);
+                if (j >= jLo && j <= jHi) {
+                    v[j * n + i]++;
+                }
+            }
+        }
+
+        void removePoint(TrigTable trig, int col, int row, int iHi, int jHi) {
+            double[] cos = trig.cos;
+            double[] sin = trig.sin;
+            double offset = trig.offset;
+            int[] v = this.v;
+            int n = cos.length;
+            for (int i = 0; i <= iHi; i++) {
+                int j = (int) (col * cos[i] + row * sin[i] + offset);
+                if (j >= 0 && j <= jHi) {
+                    v[j * n + i]--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Unsigned 16-bit cells. A cell that wraps past 65535 carries 65536 into an overflow map,
+     * so only the handful of true peak cells ever need more than 2 bytes.
+     */
+    static final class CompactCells extends Cells {
+
+        final char[] v;
+        final Map<Integer, Integer> overflow = new ConcurrentHashMap<>();
+
+        CompactCells(int size) {
+            v = new char[size];
+        }
+
+        int size() { return v.length; }
+
+        int get(int k) {
+            return overflow.isEmpty() ? v[k] : v[k] + overflow.getOrDefault(k, 0);
+        }
+
+        void set(int k, int value) {
+            v[k] = (char) value;
+            if (value > 0xffff) overflow.put(k, value & ~0xffff);
+            else if (!overflow.isEmpty()) overflow.remove(k);
+        }
+
+        void clear() {
+            Arrays.fill(v, (char) 0);
+            overflow.clear();
+        }
+
+        void votePoint(TrigTable trig, int col, int row, int iLo, int iHi, int jLo, int jHi) {
+            double[] cos = trig.cos;
+            double[] sin = trig.sin;
+            double offset = trig.offset;
+            char[] v = this.v;
+            int n = cos.length;
+            for (int i = iLo; i <= iHi; i++) {
+                int j = (int) (col * cos[i] + row * sin[i] + offset);
+                if (j >= jLo && j <= jHi) {
+                    int k = j * n + i;
+                    if (++v[k] == 0) overflow.merge(k, 0x10000, Integer::sum);
+                }
+            }
+        }
+
+        void removePoint(TrigTable trig, int col, int row, int iHi, int jHi) {
+            double[] cos = trig.cos;
+            double[] sin = trig.sin;
+            double offset = trig.offset;
+            char[] v = this.v;
+            int n = cos.length;
+            for (int i = 0; i <= iHi; i++) {
+                int j = (int) (col * cos[i] + row * sin[i] + offset);
+                if (j >= 0 && j <= jHi) {
+                    int k = j * n + i;
+                    // Borrow 65536 back from the overflow map when the low 16 bits wrap below 0
+                    if (v[k]-- == 0) overflow.merge(k, -0x10000, (a, b) -> a + b == 0 ? null : a + b);
+                }
+            }
+        }
+    }
+
+    /**
+     * cos(t)/dRho and sin(t)/dRho for every theta bin, plus the offset that maps r to a rho
+     * index with rounding. Tables are cached by geometry so batch runs over equally sized
+     * images compute the trigonometry only once.
+     */
+    static final class TrigTable {
+
+        private static final int MAX_CACHED = 16;
+        private static final Map<String, TrigTable> CACHE = new ConcurrentHashMap<>();
+
+        final double[] cos;
+        final double[] sin;
+        final double offset;
+
+        private TrigTable(int thetaBins, double thetaMin, double dTheta, double dRho, double rMax2) {
+            cos = new double[thetaBins];
+            sin = new double[thetaBins];
+            for (int i = 0; i < thetaBins; i++) {
+                double t = thetaMin + i * dTheta;
+                cos[i] = Math.cos(t) / dRho;
+                sin[i] = Math.sin(t) / dRho;
+            }
+            offset = rMax2 / dRho + 0.5;
+        }
+
+        static TrigTable get(int thetaBins, double thetaMin, double dTheta, double dRho, double rMax2) {
+            String key = thetaBins + ":" + thetaMin + ":" + dTheta + ":" + dRho + ":" + rMax2;
+            TrigTable table = CACHE.get(key);
+            if (table == null) {
+                if (CACHE.size() >= MAX_CACHED) CACHE.clear();
+                table = new TrigTable(thetaBins, thetaMin, dTheta, dRho, rMax2);
+                CACHE.put(key, table);
+            }
+            return table;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import ij.process.ImageProcessor;
+
+import java.util.Arrays;
+
+/**
+ * Ranked window maxima of raw Hough votes in a theta range, from separable sliding-max passes,
+ * with a cutoff relative to the strongest peak.
+ */
+public final class HoughPeaks {
+
+    /** Theta column, rho row and votes of every peak, strongest first. */
+    final int count;
+    final int[] theta;
+    final int[] rho;
+    final int[] votes;
+    /** Weakest vote count that was admitted. */
+    final int minVotes;
+
+    private HoughPeaks(int count, int[] theta, int[] rho, int[] votes, int minVotes) {
+        this.count = count;
+        this.theta = theta;
+        this.rho = rho;
+        this.votes = votes;
+        this.minVotes = minVotes;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Peaks of the accumulator within columns [iLo, iHi]. */
+    public static HoughPeaks find(HoughAccumulator acc, int iLo, int iHi,
+                                  int thetaRadius, int rhoRadius, int minVotes, int maxPeaks) {
+        iLo = Math.max(0, iLo);
+        iHi = Math.min(acc.thetaBins - 1, iHi);
+        int cols = iHi - iLo + 1;
+        int rows = acc.rhoBins;
+        if (cols <= 0) return new HoughPeaks(0, new int[0], new int[0], new int[0], minVotes);
+        int[] values = new int[cols * rows];
+        for (int j = 0; j < rows; j++) {
+            for (int i = 0; i < cols; i++) {
+                values[j * cols + i] = acc.get(iLo + i, j);
+            }
+        }
+        return find(values, cols, rows, iLo, thetaRadius, rhoRadius, minVotes, 0, maxPeaks);
+    }
+
+    /** Peaks of a Hough image (x = theta, y = rho, any bit depth) within columns [iLo, iHi]. */
+    public static HoughPeaks find(ImageProcessor ip, int iLo, int iHi,
+                                  int thetaRadius, int rhoRadius, int minVotes, int maxPeaks) {
+        return find(ip, iLo, iHi, thetaRadius, rhoRadius, minVotes, 0, maxPeaks);
+    }
+
+    /**
+     * Peaks of a Hough image within columns [iLo, iHi] holding at least minFraction of the
+     * votes of the strongest peak in those columns (and at least minVotes).
+     */
+    public static HoughPeaks find(ImageProcessor ip, int iLo, int iHi, int thetaRadius, int rhoRadius,
+                                  int minVotes, double minFraction, int maxPeaks) {
+        iLo = Math.max(0, iLo);
+        iHi = Math.min(ip.getWidth() - 1, iHi);
+        int cols = iHi - iLo + 1;
+        int rows = ip.getHeight();
+        if (cols <= 0) return new HoughPeaks(0, new int[0], new int[0], new int[0], minVotes);
+        int[] values = new int[cols * rows];
+        for (int j = 0; j < rows; j++) {
+            for (int i = 0; i < cols; i++) {
+                values[j * cols + i] = Math.round(ip.getf(iLo + i, j));
+            }
+        }
+        return find(values, cols, rows, iLo, thetaRadius, rhoRadius, minVotes, minFraction, maxPeaks);
+    }
+
+    /**
+     * @param values     row-major cols x rows grid, column 0 = theta bin firstCol
+     * @param minVotes    weakest peak reported (at least 1)
+     * @param minFraction weakest peak reported relative to the strongest one, 0 = no cutoff
+     * @param maxPeaks    at most this many peaks, 0 = all
+     */
+    static HoughPeaks find(int[] values, int cols, int rows, int firstCol, int thetaRadius, int rhoRadius,
+                           int minVotes, double minFraction, int maxPeaks) {
+        minVotes = Math.max(1, minVotes);
+
+        /* -------- Separable window maximum -------- */
+        int[] rowMax = new int[values.length];
+        int[] deque = new int[Math.max(cols, rows)];
+        for (int j = 0; j < rows; j++) {
+            slidingMax(values, j * cols, 1, cols, thetaRadius, rowMax, deque);
+        }
+        int[] windowMax = new int[values.length];
+        for (int i = 0; i < cols; i++) {
+            slidingMax(rowMax, i, cols, rows, rhoRadius, windowMax, deque);
+        }
+
+        /* -------- Candidates ranked by votes -------- */
+        long[] found = new long[64];
+        int c = 0;
+        for (int k = 0; k < values.length; k++) {
+            int v = values[k];
+            if (v < minVotes || v != windowMax[k]) continue;
+            if (c == found.length) found = Arrays.copyOf(found, c * 2);
+            // Descending votes, then ascending cell index for ties
+            found[c++] = ((long) (Integer.MAX_VALUE - v) << 32) | k;
+        }
+        Arrays.sort(found, 0, c);
+
+        // The strongest candidate is the strongest cell; drop the ranked tail below the cutoff
+        if (c > 0 && minFraction > 0) {
+            int strongest = Integer.MAX_VALUE - (int) (found[0] >>> 32);
+            minVotes = Math.max(minVotes, (int) Math.ceil(strongest * minFraction));
+            while (c > 0 && Integer.MAX_VALUE - (int) (found[c - 1] >>> 32) < minVotes) c--;
+        }
+
+        /* -------- Plateau suppression -------- */
+        int limit = maxPeaks > 0 ? Math.min(maxPeaks, c) : c;
+        int[] theta = new int[limit];
+        int[] rho = new int[limit];
+        int[] votes = new int[limit];
+        int n = 0;
+        for (int q = 0; q < c && n < limit; q++) {
+            int k = (int) found[q];
+            int i = k % cols;
+            int j = k / cols;
+            boolean covered = false;
+            for (int p = 0; p < n; p++) {
+                if (Math.abs(theta[p] - firstCol - i) <= thetaRadius && Math.abs(rho[p] - j) <= rhoRadius) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (covered) continue;
+            theta[n] = firstCol + i;
+            rho[n] = j;
+            votes[n] = values[k];
+            n++;
+        }
+        return new HoughPeaks(n, Arrays.copyOf(theta, n), Arrays.copyOf(rho, n), Arrays.copyOf(votes, n), minVotes);
+    }
+
+    /**
+     * out[start + t * stride] = max of in over positions [t - radius, t + radius] (clipped to
+     * [0, length)), using a deque of positions with decreasing values.
+     */
+    private static void slidingMax(int[] in, int start, int stride, int length, int radius,
+                                   int[] out, int[] deque) {
+        int head = 0, tail = 0;
+        int next = 0;
+        for (int t = 0; t < length; t++) {
+            // Admit every position up to t + radius
+            int last = Math.min(length - 1, t + radius);
+            for (; next <= last; next++) {
+                int v = in[start + next * stride];
+                while (tail > head && in[start + deque[tail - 1] * stride] <= v) tail--;
+                deque[tail++] = next;
+            }
+            // Retire positions left of t - radius
+            while (deque[head] < t - radius) head++;
+            out[start + t * stride] = in[start + deque[head] * stride];
+        }
+    }
+
+    /**
+     * Index of the elbow of a descending series: the point farthest from the line through
+     * its first and last values (same rule as Horizontal_Elbow_Filter).
+     */
+    public static int elbow(int[] descending, int n) {
+        if (n < 3) return n - 1;
+        double x2 = n - 1, y1 = descending[0], y2 = descending[n - 1];
+        double norm = Math.hypot(y2 - y1, x2);
+        int index = 0;
+        double maxDist = -1;
+        for (int i = 0; i < n; i++) {
+            double dist = Math.abs((y2 - y1) * i - x2 * descending[i] + x2 * y1) / norm;
+            if (dist > maxDist) {
+                maxDist = dist;
+                index = i;
+            }
+        }
+        return index;
+    }
+}
@@ -1,22 +1,62 @@
 import ij.*;
 import ij.process.*;
 import ij.plugin.filter.PlugInFilter;
+import ij.gui.GenericDialog;
+import ij.gui.Line;
+import ij.gui.Overlay;
 
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Horizontal lines as the rows with the most foreground pixels. "Streaming" keeps one count per
+ * row and draws into the overlay instead of building two full-size images.
+ */
 public class Hough_Horizontal_Lines implements PlugInFilter {
 
+    static final String[] MODES = {"Accumulator images", "Streaming"};
+    static final int THRESHOLD = 150;
+    static final int MIN_DIST = 10;
+
+    ImagePlus imp;
+
     @Override
     public int setup(String arg, ImagePlus imp) {
+        this.imp = imp;
         return DOES_8G;
     }
 
     @Override
     public void run(ImageProcessor ip) {
 
+        GenericDialog gd = new GenericDialog("Hough Horizontal Lines");
+        gd.addChoice("Mode:", MODES, MODES[0]);
+        gd.addNumericField("Threads (0 = all cores, streaming):", 0, 0);
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+        boolean streaming = gd.getNextChoiceIndex() == 1;
+        int threads = (int) gd.getNextNumber();
+
         int width  = ip.getWidth();
         int height = ip.getHeight();
 
         IJ.log("Input image size: " + width + " x " + height);
 
+        if (streaming) {
+            float[] response = new float[height];
+            int[] lines = streamLines(ip, threads, response);
+            Overlay overlay = new Overlay();
+            for (int y : lines) {
+                IJ.log(">> Horizontal line at y=" + y + " value=" + response[y]);
+                Line line = new Line(0, y + 0.5, width, y + 0.5);
+                line.setStrokeColor(Color.yellow);
+                overlay.add(line);
+            }
+            IJ.log("Total detected horizontal lines: " + lines.length);
+            imp.setOverlay(overlay);
+            return;
+        }
+
         // Accumulator: one value per image row
         FloatProcessor hough = new FloatProcessor(width, height);
         hough.setValue(0);
@@ -24,13 +64,11 @@ public class Hough_Horizontal_Lines implements PlugInFilter {
 
         // --- Voting ---
         // Horizontal line: y = constant → r = y
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                if (ip.getPixel(x, y) > 150) {
-                    hough.putPixelValue(x, y,
-                        hough.getPixelValue(x, y) + 1.0f);
-                }
-            }
+        // Only the foreground points vote
+        EdgePoints points = EdgePoints.extract(ip, THRESHOLD);
+        float[] votes = (float[]) hough.getPixels();
+        for (int k = 0; k < points.size(); k++) {
+            votes[points.ys[k] * width + points.xs[k]] += 1.0f;
         }
 
         // --- Collapse x dimension (sum columns) ---
@@ -50,7 +88,7 @@ public class Hough_Horizontal_Lines implements PlugInFilter {
             if (v > maxVal) maxVal = v;
 
         float threshold = 0.5f * maxVal;
-        int minDist = 10;
+        int minDist = MIN_DIST;
 
         IJ.log("Max response = " + maxVal);
         IJ.log("Threshold = " + threshold);
@@ -86,4 +124,41 @@ public class Hough_Horizontal_Lines implements PlugInFilter {
         new ImagePlus("Hough (Horizontal Lines)", hough).show();
         new ImagePlus("Detected Horizontal Lines", out).show();
     }
+
+    /**
+     * response[y] is the foreground count of row y (the sum of its accumulator row), from one
+     * ProjectionEngine sweep. Strict local maxima are the candidates; the threshold (half the
+     * largest count) and the minimum distance are applied to them top-down like the image
+     * mode, which therefore reports the same rows.
+     */
+    public static int[] streamLines(ImageProcessor ip, int threads, float[] response) {
+        int height = ip.getHeight();
+        int[] counts = ProjectionEngine.rows(ip, THRESHOLD + 1, 255, threads);
+        int[] candidates = new int[height / 2 + 1];
+        int count = 0;
+        float maxVal = 0;
+        for (int y = 0; y < height; y++) {
+            response[y] = counts[y];
+            if (counts[y] > maxVal) maxVal = counts[y];
+            if (y >= 1 && y < height - 1 && counts[y] > counts[y - 1] && counts[y] > counts[y + 1]) {
+                candidates[count++] = y;
+            }
+        }
+
+        float threshold = 0.5f * maxVal;
+        IJ.log("Max response = " + maxVal);
+        IJ.log("Threshold = " + threshold);
+
+        int[] lines = new int[count];
+        int detected = 0;
+        int lastY = -MIN_DIST;
+        for (int k = 0; k < count; k++) {
+            int y = candidates[k];
+            if (response[y] > threshold && (y - lastY) >= MIN_DIST) {
+                lastY = y;
+                lines[detected++] = y;
+            }
+        }
+        return Arrays.copyOf(lines, detected);
+    }
 }
@@ -0,0 +1,81 @@
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.GenericDialog;
+import ij.measure.ResultsTable;
+import ij.plugin.filter.PlugInFilter;
+import ij.process.ImageProcessor;
+
+/**
+ * Line peaks of a Hough_Transform image around pi/2 from its raw votes (see HoughPeaks), handed
+ * on through PipelineResult and the Results table.
+ */
+public class Hough_Peaks implements PlugInFilter {
+
+    ImagePlus imp;
+
+    public int setup(String args, ImagePlus im) {
+        this.imp = im;
+        return DOES_8G | DOES_16 | DOES_32 | NO_CHANGES;
+    }
+
+    public void run(ImageProcessor ip) {
+
+        GenericDialog gd = new GenericDialog("Hough Peaks");
+        gd.addNumericField("Angle window around pi/2 (+- degrees):", 9, 1);
+        gd.addNumericField("Theta radius (bins):", 5, 0);
+        gd.addNumericField("Rho radius (bins):", 10, 0);
+        gd.addNumericField("Min votes (% of strongest):", 20, 1);
+        gd.addNumericField("Max peaks (0 = all):", 10, 0);
+        gd.addCheckbox("Elbow cut on votes", true);
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+
+        double halfWidthDegrees = gd.getNextNumber();
+        int thetaRadius = (int) gd.getNextNumber();
+        int rhoRadius = (int) gd.getNextNumber();
+        double minPercent = gd.getNextNumber();
+        int maxPeaks = (int) gd.getNextNumber();
+        boolean elbow = gd.getNextBoolean();
+
+        PipelineResult result = new PipelineResult();
+        find(imp, ip, halfWidthDegrees, thetaRadius, rhoRadius, minPercent, maxPeaks, elbow, result);
+
+        // Hand the peaks to Hough_To_BoundingBox on this thread, empty when the window held no
+        // votes so it does not box an earlier image's peaks; the global table is only a mirror
+        PipelineResult.publish(result);
+        ResultsTable rt = ResultsTable.getResultsTable();
+        result.mirrorPeaks(rt);
+        rt.show("Results");
+    }
+
+    /**
+     * Peaks of the Hough image (ip of imp, whose Info holds the theta geometry) within
+     * +- halfWidthDegrees of pi/2 into out as X = theta column, Y = rho row and Votes,
+     * strongest first. False when the window holds no votes.
+     */
+    public static boolean find(ImagePlus imp, ImageProcessor ip, double halfWidthDegrees, int thetaRadius,
+                               int rhoRadius, double minPercent, int maxPeaks, boolean elbow, PipelineResult out) {
+        out.clearPeaks("Votes");
+        double halfWidth = Math.toRadians(halfWidthDegrees);
+
+        // Column geometry recorded by Hough_Transform, or the original one column per pi / width
+        double thetaMin = HoughAccumulator.infoValue(imp, "theta_min", 0);
+        double thetaStep = HoughAccumulator.infoValue(imp, "theta_step", Math.PI / ip.getWidth());
+        int iLo = (int) Math.ceil((Math.PI / 2 - halfWidth - thetaMin) / thetaStep - 1e-9);
+        int iHi = (int) Math.floor((Math.PI / 2 + halfWidth - thetaMin) / thetaStep + 1e-9);
+
+        // One scan of the window; the percentage applies to its strongest peak
+        HoughPeaks peaks = HoughPeaks.find(ip, iLo, iHi, thetaRadius, rhoRadius, 1, minPercent / 100.0, maxPeaks);
+        if (peaks.size() == 0) {
+            IJ.log("Hough Peaks: no votes within the angle window.");
+            return false;
+        }
+
+        int kept = peaks.size();
+        if (elbow && kept >= 2) kept = HoughPeaks.elbow(peaks.votes, kept) + 1;
+
+        for (int p = 0; p < kept; p++) out.addPeak(peaks.theta[p], peaks.rho[p], peaks.votes[p]);
+        IJ.log("Hough Peaks: kept " + kept + " of " + peaks.size() + " peaks (min votes " + peaks.minVotes + ")");
+        return true;
+    }
+}
@@ -37,33 +37,14 @@ public class Hough_To_BoundingBox implements PlugInFilter {
         origImp = WindowManager.getImage(gd.getNextChoice());
         drawImp = WindowManager.getImage(gd.getNextChoice());
 
-        ResultsTable rt = ResultsTable.getResultsTable();
-        int n = rt.getCounter();
-        if (n == 0) return;
-
-        int houghH = houghImp.getHeight();
-        int origH = origImp.getHeight();
-        int origW = origImp.getWidth();
-        double houghCenterY = houghH / 2.0;
-        double origCenterY = origH / 2.0;
-
-        ArrayList<Double> mappedYs = new ArrayList<>();
-        for (int i = 0; i < n; i++) {
-            double yHough = rt.getValue("Y", i);
-            double diff = yHough - houghCenterY;
-            mappedYs.add(origCenterY + diff);
-        }
-        Collections.sort(mappedYs);
-
-        float[] projection = new float[origH];
-        ImageProcessor origIp = origImp.getProcessor();
-        for (int y = 0; y < origH; y++) {
-            float rowSum = 0;
-            for (int x = 0; x < origW; x++) {
-                if (origIp.getPixel(x, y) > 0) rowSum++;
-            }
-            projection[y] = rowSum;
+        // Peaks handed over by the previous stage on this thread (consumed here, even when
+        // empty), or without a hand-off the X / Y columns of the Results table
+        PipelineResult result = PipelineResult.takeOrTable(ResultsTable.getResultsTable());
+        if (result.peakCount() == 0) {
+            IJ.log("Hough To BoundingBox: no peaks to map.");
+            return;
         }
+        mapBands(result, houghImp, origImp.getProcessor(), drawImp.getWidth());
 
         // Initialize ROI Manager and Overlay
         RoiManager rm = RoiManager.getInstance();
@@ -81,30 +62,70 @@ public class Hough_To_BoundingBox implements PlugInFilter {
             IJ.run(drawImp, "RGB Color", "");
         }
 
-        for (int i = 0; i < mappedYs.size(); i++) {
-            int targetY = mappedYs.get(i).intValue();
-            int topSearchLimit = (i == 0) ? 0 : mappedYs.get(i-1).intValue();
-            int bottomSearchLimit = (i == mappedYs.size() - 1) ? origH - 1 : mappedYs.get(i+1).intValue();
+        for (int i = 0; i < result.boxCount(); i++) {
+            int[] b = result.box(i);
+            Roi r = new Roi(b[0], b[1], b[2], b[3]);
+            r.setStrokeColor(Color.YELLOW);
+            r.setStrokeWidth(2);
+            overlay.add(r);
+            rm.addRoi(r);
+        }
+
+        drawImp.setOverlay(overlay);
+        ImagePlus flattened = drawImp.flatten(); 
+        flattened.setTitle("Burned_" + drawImp.getTitle());
+        flattened.show();
+    }
+
+    /**
+     * Maps the peaks' rho rows (Y) of the Hough image to rows of the preprocessed image and
+     * grows each into a line band up to the valleys of its row projection, towards the
+     * neighbouring lines. The bands, and boxes of the given width over them, replace those
+     * of result.
+     */
+    public static void mapBands(PipelineResult result, ImagePlus houghImp, ImageProcessor preprocessed, int boxWidth) {
+        result.clearBands();
+        int n = result.peakCount();
+
+        int houghH = houghImp.getHeight();
+        int origH = preprocessed.getHeight();
+        double houghCenterY = houghH / 2.0;
+        double origCenterY = origH / 2.0;
+
+        // Hough images with a custom rho resolution record the bin size in their Info
+        double rhoStep = HoughAccumulator.infoValue(houghImp, "rho_step", 1.0);
+
+        double[] mappedYs = new double[n];
+        for (int i = 0; i < n; i++) {
+            double yHough = result.peakY(i);
+            double diff = (yHough - houghCenterY) * rhoStep;
+            mappedYs[i] = origCenterY + diff;
+        }
+        Arrays.sort(mappedYs);
+
+        // Row projection of the non-zero pixels, straight from the raw buffer
+        int[] rowCounts = ProjectionEngine.rows(preprocessed, 1, Integer.MAX_VALUE, 0);
+        float[] projection = new float[origH];
+        for (int y = 0; y < origH; y++) {
+            projection[y] = rowCounts[y];
+        }
+
+        for (int i = 0; i < n; i++) {
+            int targetY = (int) mappedYs[i];
+            int topSearchLimit = (i == 0) ? 0 : (int) mappedYs[i - 1];
+            int bottomSearchLimit = (i == n - 1) ? origH - 1 : (int) mappedYs[i + 1];
 
             int top = findValley(projection, targetY, topSearchLimit, -1);
             int bottom = findValley(projection, targetY, bottomSearchLimit, 1);
 
             if (bottom > top) {
-                Roi r = new Roi(0, top, drawImp.getWidth(), bottom - top);
-                r.setStrokeColor(Color.YELLOW);
-                r.setStrokeWidth(2);
-                overlay.add(r);
-                rm.addRoi(r);
+                result.addBand(top, bottom);
+                result.addBox(0, top, boxWidth, bottom - top);
             }
         }
-
-        drawImp.setOverlay(overlay);
-        ImagePlus flattened = drawImp.flatten(); 
-        flattened.setTitle("Burned_" + drawImp.getTitle());
-        flattened.show();
     }
 
-    private int findValley(float[] projection, int startY, int limitY, int dir) {
+    private static int findValley(float[] projection, int startY, int limitY, int dir) {
         int bestY = startY;
         float minVal = projection[startY];
         int current = startY;
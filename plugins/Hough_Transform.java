@@ -1,69 +1,163 @@
+import ij.IJ;
 import ij.ImagePlus;
+import ij.WindowManager;
+import ij.gui.GenericDialog;
 import ij.process.ImageProcessor;
-import ij.process.ByteProcessor;
 import ij.plugin.filter.PlugInFilter;
 
 public class Hough_Transform implements PlugInFilter {
 
+    static final String[] OUTPUTS = {"8-bit", "16-bit", "32-bit"};
+    static final String[] VOTING = {"Exact", "Progressive", "Gradient-guided", "Coarse-to-fine"};
+    static final String SOBEL_ON_INPUT = "<Sobel on input>";
+
+    ImagePlus imp;
+
     public int setup(String args, ImagePlus im) {
+        this.imp = im;
         return DOES_8G;
     }
 
     public void run(ImageProcessor imageSpace) {
 
+        GenericDialog gd = new GenericDialog("Hough Transform");
+        gd.addChoice("Output:", OUTPUTS, OUTPUTS[0]);
+        gd.addCheckbox("Normalize 8-bit output to 0-255", true);
+        gd.addNumericField("Threads (0 = all cores):", 0, 0);
+        gd.addNumericField("Theta_bins (0 = image width):", 0, 0);
+        gd.addNumericField("Rho_bins (0 = image diagonal):", 0, 0);
+        gd.addCheckbox("Compact 16-bit accumulator (overflow-promoting)", false);
+        gd.addNumericField("Memory budget (MB, 0 = unlimited):", 0, 0);
+        gd.addCheckbox("Angle window around pi/2", false);
+        gd.addNumericField("Half-width of window (degrees):", 9, 1);
+        gd.addNumericField("Theta step (degrees, 0 = 180 / theta bins):", 0, 3);
+        gd.addCheckbox("Map window back to full [0, pi) image", true);
+        gd.addChoice("Voting:", VOTING, VOTING[0]);
+        gd.addNumericField("Top-k lines (progressive):", 5, 0);
+        gd.addNumericField("Batch size (% of points, progressive):", 2, 1);
+        gd.addChoice("Orientation (degrees, guided):", orientationChoices(), SOBEL_ON_INPUT);
+        gd.addNumericField("Angular band (+- degrees, guided):", 5, 1);
+        gd.addNumericField("Pyramid factor (coarse-to-fine):", 4, 0);
+        gd.addNumericField("Candidates (coarse-to-fine):", 20, 0);
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+
+        String output = gd.getNextChoice();
+        boolean normalize = gd.getNextBoolean();
+        int threads = (int) gd.getNextNumber();
+        int thetaBins = (int) gd.getNextNumber();
+        int rhoBins = (int) gd.getNextNumber();
+        boolean compact = gd.getNextBoolean();
+        double budgetMB = gd.getNextNumber();
+        boolean window = gd.getNextBoolean();
+        double halfWidth = gd.getNextNumber();
+        double thetaStep = gd.getNextNumber();
+        boolean mapBack = gd.getNextBoolean();
+        String voting = gd.getNextChoice();
+        int topK = (int) gd.getNextNumber();
+        double batchPercent = gd.getNextNumber();
+        String orientationTitle = gd.getNextChoice();
+        double angularBand = gd.getNextNumber();
+        int pyramidFactor = (int) gd.getNextNumber();
+        int candidates = (int) gd.getNextNumber();
+
         int height = imageSpace.getHeight();
         int width = imageSpace.getWidth();
-        int h2 = height / 2;
-        int w2 = width / 2;
-
-        int rHeight = (int) Math.hypot(height, width);
-
-        ImageProcessor paramSpace = new ByteProcessor(width, rHeight);
-
-        double tMax = Math.PI;
-        double dt = tMax / width;
-
-        double rMax = Math.hypot(width, height);
-        double dr = rMax / rHeight;
-        double rMax2 = rMax / 2.0;
-
-        int i, j;
-        double r;
-        int maxVote = 0;
-
-        /* -------- Hough voting -------- */
-        for (int col = -w2; col < w2; col++) {
-            for (int row = -h2; row < h2; row++) {
-
-                if (imageSpace.getPixel(col + w2, row + h2) > 120) {
 
-                    for (double t = 0; t < tMax; t += dt) {
-
-                        r = col * Math.cos(t) + row * Math.sin(t);
-
-                        i = (int) (t / dt + 0.5);
-                        j = (int) ((r + rMax2) / dr + 0.5);
-
-                        int v = paramSpace.getPixel(i, j) + 1;
-                        paramSpace.putPixel(i, j, v);
-
-                        if (v > maxVote)
-                            maxVote = v;
-                    }
-                }
+        // Bin counts are independent of the image size; 0 keeps the original geometry
+        if (thetaBins <= 0) thetaBins = width;
+        if (rhoBins <= 0) rhoBins = (int) Math.hypot(height, width);
+        double dTheta = thetaStep > 0 ? Math.toRadians(thetaStep) : Math.PI / thetaBins;
+        int columns = window ? 2 * (int) Math.round(Math.toRadians(halfWidth) / dTheta) + 1 : thetaBins;
+
+        // Coarsen rho until everything sized by it fits the memory budget: the accumulator (the
+        // only vote storage, parallel workers split its columns), the coarse level, the
+        // full-width copy when mapping back, and the output image
+        if (budgetMB > 0) {
+            int cell = HoughAccumulator.bytesPerCell(compact);
+            boolean mapped = window && mapBack;
+            int outColumns = mapped ? width : columns;
+            int outBytes = output.equals(OUTPUTS[2]) ? 4 : output.equals(OUTPUTS[1]) ? 2 : 1;
+            double bytesPerRho = (double) columns * cell + (double) outColumns * outBytes;
+            if (mapped) bytesPerRho += (double) width * cell;
+            if (voting.equals(VOTING[3])) {
+                int f = Math.max(2, pyramidFactor);
+                bytesPerRho += 4.0 * ((columns + f - 1) / f) / f;
+            }
+            long maxRho = (long) (budgetMB * 1024 * 1024 / bytesPerRho);
+            if (maxRho < 16) {
+                IJ.error("Hough Transform", "A memory budget of " + budgetMB + " MB does not fit even 16 rho bins"
+                        + " (" + Math.round(16 * bytesPerRho / 1024) + " KB needed).");
+                return;
+            }
+            if (rhoBins > maxRho) {
+                rhoBins = (int) maxRho;
+                IJ.log("Hough Transform: rho bins reduced to " + rhoBins + " to fit " + budgetMB + " MB");
             }
         }
 
-        /* -------- Normalize to 0–255 -------- */
-        double scale = 255.0 / maxVote;
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < rHeight; y++) {
-                int pixel = (int) (paramSpace.getPixel(x, y) * scale);
-                paramSpace.putPixel(x, y, pixel);
-            }
+        // The windowed mode only allocates and votes the theta bins around pi/2 used downstream
+        HoughAccumulator acc = window
+                ? HoughAccumulator.forWindow(width, height, Math.PI / 2,
+                        Math.toRadians(halfWidth), dTheta, rhoBins, compact)
+                : new HoughAccumulator(width, height, thetaBins, rhoBins, compact);
+
+        /* -------- Hough voting (foreground points only) -------- */
+        EdgePoints points = EdgePoints.extract(imageSpace, 120);
+        if (voting.equals(VOTING[1])) {
+            // Random batches until the top-k peaks around pi/2 are stable
+            ProgressiveHough progressive = new ProgressiveHough(topK, batchPercent / 100.0);
+            progressive.vote(acc, points, threads);
+            IJ.log("Progressive Hough: " + progressive.consumed + " of " + points.size()
+                    + " points in " + progressive.batches + " batches"
+                    + (progressive.converged ? "" : " (did not converge, all points voted)"));
+        } else if (voting.equals(VOTING[2])) {
+            // Each point votes only around its own line normal
+            float[] normals;
+            ImagePlus orientationImp = WindowManager.getImage(orientationTitle);
+            if (orientationTitle.equals(SOBEL_ON_INPUT) || orientationImp == null)
+                normals = GradientOrientation.sobel(points, imageSpace, 2);
+            else
+                normals = GradientOrientation.fromImage(points, orientationImp.getProcessor());
+            acc.voteGuided(points, normals, Math.toRadians(angularBand), threads);
+        } else if (voting.equals(VOTING[3])) {
+            // Coarse peaks first, then exact votes only in small rectangles around them
+            PyramidHough pyramid = new PyramidHough(pyramidFactor, candidates);
+            pyramid.vote(acc, points, threads);
+            IJ.log("Coarse-to-fine Hough: " + pyramid.coarsePoints + " coarse points, "
+                    + pyramid.regions + " regions re-voted by " + pyramid.finePoints + " of "
+                    + points.size() + " points");
+        } else {
+            acc.votePoints(points, threads);
         }
 
-        new ImagePlus("Hough Transform", paramSpace).show();
+        if (window && mapBack)
+            acc = acc.toFullSpace();
+
+        /* -------- Output: 8-bit (optionally normalized) or raw vote counts -------- */
+        ImageProcessor paramSpace;
+        if (output.equals(OUTPUTS[1]))
+            paramSpace = acc.toShortProcessor();
+        else if (output.equals(OUTPUTS[2]))
+            paramSpace = acc.toFloatProcessor();
+        else
+            paramSpace = acc.toByteProcessor(normalize);
+
+        // x -> theta = theta_min + x * theta_step, y -> rho = (y - height / 2) * rho_step
+        ImagePlus houghImp = new ImagePlus("Hough Transform", paramSpace);
+        houghImp.setProperty("Info", "theta_min=" + acc.theta(0)
+                + "\ntheta_step=" + acc.dTheta
+                + "\ntheta_bins=" + acc.getThetaBins()
+                + "\nrho_step=" + acc.dRho
+                + "\nrho_bins=" + acc.getRhoBins() + "\n");
+        houghImp.show();
+    }
+
+    private static String[] orientationChoices() {
+        String[] titles = WindowManager.getImageTitles();
+        String[] choices = new String[titles.length + 1];
+        choices[0] = SOBEL_ON_INPUT;
+        System.arraycopy(titles, 0, choices, 1, titles.length);
+        return choices;
     }
 }
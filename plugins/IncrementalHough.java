@@ -0,0 +1,145 @@
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Hough accumulator that follows threshold and ROI changes by voting or removing only the pixels
+ * that enter or leave the foreground. The pixels are copied, so create a new one after editing.
+ */
+public final class IncrementalHough {
+
+    final HoughAccumulator acc;
+
+    private final int width;
+    private final int height;
+    private final byte[] pixels;
+
+    /** Indices y * width + x of the non-zero pixels, sorted by value; value v at [start[v], start[v + 1]). */
+    private final int[] byValue;
+    private final int[] start = new int[257];
+
+    private int threshold = 255;
+    private Rectangle roi;
+
+    /** Points added and removed by the last update. */
+    int added;
+    int removed;
+
+    /** Starts with nothing voted (threshold 255) and the whole image as ROI. */
+    public IncrementalHough(ImageProcessor ip, HoughAccumulator acc) {
+        this.acc = acc;
+        this.width = ip.getWidth();
+        this.height = ip.getHeight();
+        this.pixels = ((byte[]) ip.getPixels()).clone();
+        this.roi = new Rectangle(0, 0, width, height);
+
+        // Counting sort by grey level; value 0 can never be above a threshold
+        int[] histogram = new int[256];
+        for (byte p : pixels) histogram[p & 0xff]++;
+        start[1] = 0;
+        for (int v = 1; v < 256; v++) start[v + 1] = start[v] + histogram[v];
+        byValue = new int[start[256]];
+        int[] next = Arrays.copyOf(start, 256);
+        for (int k = 0; k < pixels.length; k++) {
+            int v = pixels[k] & 0xff;
+            if (v != 0) byValue[next[v]++] = k;
+        }
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public Rectangle getRoi() {
+        return new Rectangle(roi);
+    }
+
+    /**
+     * Moves to a new threshold and ROI (null = whole image), voting only the difference.
+     *
+     * @param threads workers for the added points, 0 = all cores
+     */
+    public void update(int newThreshold, Rectangle newRoi, int threads) {
+        newThreshold = Math.max(0, Math.min(255, newThreshold));
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        newRoi = newRoi == null ? bounds : newRoi.intersection(bounds);
+        if (newRoi.isEmpty()) newRoi = new Rectangle(0, 0, 0, 0);
+
+        PointBuffer add = new PointBuffer();
+        PointBuffer remove = new PointBuffer();
+
+        // ROI first, at the old threshold: strips that left or entered the rectangle
+        if (!newRoi.equals(roi)) {
+            for (Rectangle strip : difference(roi, newRoi)) scan(strip, threshold, remove);
+            for (Rectangle strip : difference(newRoi, roi)) scan(strip, threshold, add);
+            roi = newRoi;
+        }
+
+        // Then the grey levels between the old and the new threshold, inside the new ROI
+        if (newThreshold != threshold) {
+            int lo = Math.min(threshold, newThreshold);
+            int hi = Math.max(threshold, newThreshold);
+            PointBuffer target = newThreshold < threshold ? add : remove;
+            for (int k = start[lo + 1]; k < start[hi + 1]; k++) {
+                int x = byValue[k] % width;
+                int y = byValue[k] / width;
+                if (roi.contains(x, y)) target.add(x, y);
+            }
+            threshold = newThreshold;
+        }
+
+        // Adds first, so no cell ever dips below its final count
+        acc.votePoints(add.toPoints(width, height, threshold), threads);
+        acc.removePoints(remove.toPoints(width, height, threshold));
+        added = add.count;
+        removed = remove.count;
+    }
+
+    /** Foreground pixels (value > t) of the rectangle, in row-major order. */
+    private void scan(Rectangle r, int t, PointBuffer out) {
+        for (int y = r.y; y < r.y + r.height; y++) {
+            int offset = y * width;
+            for (int x = r.x; x < r.x + r.width; x++) {
+                if ((pixels[offset + x] & 0xff) > t) out.add(x, y);
+            }
+        }
+    }
+
+    /** a \ b as at most four disjoint rectangles: the strips above, below, left and right of a intersect b. */
+    static Rectangle[] difference(Rectangle a, Rectangle b) {
+        Rectangle c = a.intersection(b);
+        if (c.isEmpty()) return a.isEmpty() ? new Rectangle[0] : new Rectangle[]{a};
+        Rectangle[] strips = {
+                new Rectangle(a.x, a.y, a.width, c.y - a.y),
+                new Rectangle(a.x, c.y + c.height, a.width, a.y + a.height - c.y - c.height),
+                new Rectangle(a.x, c.y, c.x - a.x, c.height),
+                new Rectangle(c.x + c.width, c.y, a.x + a.width - c.x - c.width, c.height)};
+        int n = 0;
+        for (Rectangle s : strips) {
+            if (!s.isEmpty()) strips[n++] = s;
+        }
+        return Arrays.copyOf(strips, n);
+    }
+
+    /** Growable pair of coordinate arrays. */
+    private static final class PointBuffer {
+        int[] xs = new int[256];
+        int[] ys = new int[256];
+        int count;
+
+        void add(int x, int y) {
+            if (count == xs.length) {
+                xs = Arrays.copyOf(xs, count * 2);
+                ys = Arrays.copyOf(ys, count * 2);
+            }
+            xs[count] = x;
+            ys[count] = y;
+            count++;
+        }
+
+        EdgePoints toPoints(int width, int height, int threshold) {
+            return EdgePoints.wrap(width, height, threshold, count, xs, ys);
+        }
+    }
+}
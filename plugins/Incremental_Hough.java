@@ -0,0 +1,86 @@
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.DialogListener;
+import ij.gui.GenericDialog;
+import ij.gui.NonBlockingGenericDialog;
+import ij.gui.Roi;
+import ij.gui.RoiListener;
+import ij.plugin.filter.PlugInFilter;
+import ij.process.ImageProcessor;
+
+import java.awt.AWTEvent;
+import java.awt.Rectangle;
+
+/**
+ * Hough transform that follows a threshold slider and ROI edits live (see IncrementalHough).
+ */
+public class Incremental_Hough implements PlugInFilter, DialogListener, RoiListener {
+
+    ImagePlus imp;
+    ImagePlus houghImp;
+    IncrementalHough hough;
+    int threshold = 120;
+    int threads = 0;
+
+    public int setup(String args, ImagePlus im) {
+        this.imp = im;
+        return DOES_8G | NO_CHANGES;
+    }
+
+    public void run(ImageProcessor ip) {
+        hough = new IncrementalHough(ip, HoughAccumulator.forImage(ip.getWidth(), ip.getHeight()));
+        hough.update(threshold, roiBounds(), threads);
+        houghImp = new ImagePlus("Hough Transform", hough.acc.toByteProcessor(true));
+        houghImp.show();
+
+        NonBlockingGenericDialog gd = new NonBlockingGenericDialog("Incremental Hough");
+        gd.addSlider("Threshold:", 0, 255, threshold);
+        gd.addNumericField("Threads (0 = all cores):", threads, 0);
+        gd.addMessage("Edit the ROI of " + imp.getTitle() + " to restrict the voting pixels.");
+        gd.addDialogListener(this);
+        Roi.addRoiListener(this);
+        try {
+            gd.showDialog();
+        } finally {
+            Roi.removeRoiListener(this);
+        }
+        if (gd.wasCanceled()) return;
+        IJ.log("Incremental Hough: threshold " + hough.getThreshold() + ", ROI " + hough.getRoi());
+    }
+
+    public boolean dialogItemChanged(GenericDialog gd, AWTEvent e) {
+        int t = (int) gd.getNextNumber();
+        int n = (int) gd.getNextNumber();
+        if (gd.invalidNumber() || t < 0 || t > 255) return false;
+        threshold = t;
+        threads = n;
+        refresh();
+        return true;
+    }
+
+    public void roiModified(ImagePlus img, int id) {
+        if (img == imp) refresh();
+    }
+
+    /** Brings the accumulator to the current threshold and ROI and redraws the Hough image. */
+    private synchronized void refresh() {
+        if (hough == null) return;
+        Rectangle roi = roiBounds();
+        if (threshold == hough.getThreshold() && hough.getRoi().equals(clip(roi))) return;
+        hough.update(threshold, roi, threads);
+        IJ.showStatus("Hough: +" + hough.added + " / -" + hough.removed + " points");
+        if (houghImp.getWindow() == null) houghImp.show();
+        houghImp.setProcessor(hough.acc.toByteProcessor(true));
+    }
+
+    /** Bounding rectangle of the area ROI, null (whole image) when there is none. */
+    private Rectangle roiBounds() {
+        Roi roi = imp.getRoi();
+        return roi != null && roi.isArea() ? roi.getBounds() : null;
+    }
+
+    private Rectangle clip(Rectangle roi) {
+        Rectangle bounds = new Rectangle(0, 0, imp.getWidth(), imp.getHeight());
+        return roi == null ? bounds : roi.intersection(bounds);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * In-place dilation and erosion of 8-bit images with line elements of any length (van Herk /
+ * Gil-Werman running max / min, three comparisons per pixel).
+ */
+public final class LineMorphology {
+
+    private LineMorphology() {
+    }
+
+    public static void dilate(byte[] pixels, int width, int height, int hLength, int vLength, int threads) {
+        rectangle(pixels, width, height, hLength, vLength, true, false, threads);
+    }
+
+    public static void erode(byte[] pixels, int width, int height, int hLength, int vLength, int threads) {
+        rectangle(pixels, width, height, hLength, vLength, false, false, threads);
+    }
+
+    /** Erosion then dilation: removes bright structures the element does not fit in. */
+    public static void open(byte[] pixels, int width, int height, int hLength, int vLength, int threads) {
+        rectangle(pixels, width, height, hLength, vLength, false, false, threads);
+        rectangle(pixels, width, height, hLength, vLength, true, true, threads);
+    }
+
+    /** Dilation then erosion: fills dark gaps shorter than the element. */
+    public static void close(byte[] pixels, int width, int height, int hLength, int vLength, int threads) {
+        rectangle(pixels, width, height, hLength, vLength, true, false, threads);
+        rectangle(pixels, width, height, hLength, vLength, false, true, threads);
+    }
+
+    /**
+     * Horizontal line, then vertical line. A line of length k covers [x - (k - 1) / 2, x + k / 2],
+     * reflected [x - k / 2, x + (k - 1) / 2]; open / close need the reflected one for even k.
+     */
+    private static void rectangle(byte[] pixels, int width, int height, int hLength, int vLength,
+                                  boolean dilate, boolean reflected, int threads) {
+        filter(pixels, width, height, hLength, true, dilate, reflected, threads);
+        filter(pixels, width, height, vLength, false, dilate, reflected, threads);
+    }
+
+    /**
+     * Running max (dilate) or min of every row (horizontal) or column with a line of the given
+     * length, reflected or not. Lines are split into bands, one per worker, each with its own
+     * scratch buffers.
+     */
+    static void filter(byte[] pixels, int width, int height, int length, boolean horizontal,
+                       boolean dilate, boolean reflected, int threads) {
+        if (length <= 1) return;
+        int lines = horizontal ? height : width;
+        int n = horizontal ? width : height;
+        int step = horizontal ? 1 : width;
+        int bands = Math.min(Parallel.threads(threads), lines);
+        Parallel.forEach(bands, bands, b -> {
+            int from = Parallel.bandStart(b, bands, lines);
+            int to = Parallel.bandStart(b + 1, bands, lines);
+            int[] line = new int[n + length - 1];
+            int[] forward = new int[line.length];
+            int[] backward = new int[line.length];
+            for (int l = from; l < to; l++) {
+                int start = horizontal ? l * width : l;
+                runningExtreme(pixels, start, step, n, length, dilate, reflected, line, forward, backward);
+            }
+        });
+    }
+
+    /** van Herk / Gil-Werman over one line of n pixels starting at start, stepping by step. */
+    private static void runningExtreme(byte[] pixels, int start, int step, int n, int k, boolean max,
+                                       boolean reflected, int[] line, int[] forward, int[] backward) {
+        // Padded line: (k - 1) / 2 neutral values before and k / 2 after, swapped when reflected
+        int before = reflected ? k / 2 : (k - 1) / 2;
+        int neutral = max ? 0 : 255;
+        int m = line.length;
+        for (int i = 0; i < before; i++) line[i] = neutral;
+        for (int i = 0, p = start; i < n; i++, p += step) line[before + i] = pixels[p] & 0xff;
+        for (int i = before + n; i < m; i++) line[i] = neutral;
+
+        // Forward: extreme from the start of each block; backward: to the end of each block
+        for (int i = 0; i < m; i++) {
+            int v = line[i];
+            if (i % k == 0) forward[i] = v;
+            else forward[i] = max ? Math.max(forward[i - 1], v) : Math.min(forward[i - 1], v);
+        }
+        for (int i = m - 1; i >= 0; i--) {
+            int v = line[i];
+            if (i == m - 1 || (i + 1) % k == 0) backward[i] = v;
+            else backward[i] = max ? Math.max(backward[i + 1], v) : Math.min(backward[i + 1], v);
+        }
+
+        // Window [i, i + k - 1] of the padded line is the element around pixel i
+        for (int i = 0, p = start; i < n; i++, p += step) {
+            int a = backward[i];
+            int b = forward[i + k - 1];
+            pixels[p] = (byte) (max ? Math.max(a, b) : Math.min(a, b));
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import ij.*;
+import ij.process.*;
+import ij.gui.GenericDialog;
+import ij.plugin.filter.PlugInFilter;
+
+/**
+ * Step 6 in one pass: the image is thresholded like setAutoThreshold("Default dark") and
+ * Convert to Mask, and AND-ed with a binary edge image into "Result of <edges>", both as
+ * bit-packed rows (see BinaryRaster).
+ */
+public class Mask_And implements PlugInFilter {
+    ImagePlus imp;
+
+    public int setup(String arg, ImagePlus imp) {
+        this.imp = imp;
+        return DOES_8G;
+    }
+
+    public void run(ImageProcessor ip) {
+        String[] imageList = WindowManager.getImageTitles();
+        GenericDialog gd = new GenericDialog("Mask And");
+        gd.addChoice("Edges image:", imageList, imageList[0]);
+        gd.addChoice("Threshold method:", AutoThresholder.getMethods(), "Default");
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+
+        ImagePlus edgesImp = WindowManager.getImage(gd.getNextChoice());
+        String method = gd.getNextChoice();
+        ImageProcessor edgesIp = edgesImp.getProcessor();
+        if (edgesIp.getWidth() != ip.getWidth() || edgesIp.getHeight() != ip.getHeight()) {
+            IJ.error("Mask And", "The edges image must have the same size.");
+            return;
+        }
+
+        // --- Threshold level exactly as ImageJ picks it, then pack the mask ---
+        ip.setAutoThreshold(method + " dark no-reset");
+        int lower = (int) ip.getMinThreshold();
+        int upper = (int) ip.getMaxThreshold();
+        if (ip.getMinThreshold() == ImageProcessor.NO_THRESHOLD) lower = upper = -1;
+        ip.resetThreshold();
+        BinaryRaster mask = BinaryRaster.of(ip, lower, upper);
+
+        // --- The image becomes the mask, as Convert to Mask leaves it ---
+        ip.setPixels(mask.toByteProcessor().getPixels());
+        if (ip.isInvertedLut() == Prefs.blackBackground) ip.invertLut();
+        imp.updateAndDraw();
+
+        // --- AND with the edges (foreground 255) ---
+        BinaryRaster masked = BinaryRaster.of(edgesIp).and(mask);
+        ImageProcessor out = masked.toProcessor(edgesIp);
+        new ImagePlus("Result of " + edgesImp.getTitle(), out).show();
+    }
+}
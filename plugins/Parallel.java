@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Small fork-join helper for plugins that split work into independent bands.
+ */
+public final class Parallel {
+
+    private Parallel() {
+    }
+
+    /** Number of workers to use for a requested thread count (0 or less = all cores). */
+    public static int threads(int requested) {
+        return requested > 0 ? requested : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs body(0) .. body(tasks - 1) on a fork-join pool with the given number of threads
+     * and waits for all of them. With a single thread or task the body runs on the caller.
+     */
+    public static void forEach(int tasks, int threads, IntConsumer body) {
+        int n = Math.min(threads(threads), tasks);
+        if (n <= 1) {
+            for (int t = 0; t < tasks; t++) body.accept(t);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(n);
+        try {
+            List<Callable<Void>> jobs = new ArrayList<>(tasks);
+            for (int t = 0; t < tasks; t++) {
+                final int task = t;
+                jobs.add(() -> {
+                    body.accept(task);
+                    return null;
+                });
+            }
+            for (Future<Void> f : pool.invokeAll(jobs)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Start of band b when [0, length) is split into the given number of near-equal bands. */
+    public static int bandStart(int b, int bands, int length) {
+        return (int) ((long) length * b / bands);
+    }
+}
@@ -0,0 +1,170 @@
+import ij.measure.ResultsTable;
+
+import java.util.Arrays;
+
+/**
+ * Peaks, line bands and boxes handed from one line-detection stage to the next on the same
+ * thread. The next stage takes it once, and reads the Results table when none was published.
+ */
+public final class PipelineResult {
+
+    private static final ThreadLocal<PipelineResult> CURRENT = new ThreadLocal<>();
+
+    /* -------- Peaks -------- */
+
+    int peakCount;
+    double[] peakX = new double[16];
+    double[] peakY = new double[16];
+    double[] peakWeight = new double[16];
+    /** Results table column of the weight ("Votes" or "Area"). */
+    String weightColumn = "Votes";
+
+    /* -------- Line bands and boxes -------- */
+
+    int bandCount;
+    /** Band rows [bandTop, bandBottom) of the target image. */
+    int[] bandTop = new int[16];
+    int[] bandBottom = new int[16];
+
+    int boxCount;
+    int[] boxX = new int[16];
+    int[] boxY = new int[16];
+    int[] boxWidth = new int[16];
+    int[] boxHeight = new int[16];
+
+    /** Result published by the last stage that ran on this thread, or null. */
+    public static PipelineResult current() {
+        return CURRENT.get();
+    }
+
+    /** Makes r the current result of this thread (null clears it). */
+    public static void publish(PipelineResult r) {
+        if (r == null) CURRENT.remove();
+        else CURRENT.set(r);
+    }
+
+    /**
+     * The current result, which is cleared so the next read does not see it again, or when
+     * nothing is published on this thread the peaks in the X / Y columns of rt.
+     */
+    public static PipelineResult takeOrTable(ResultsTable rt) {
+        PipelineResult r = CURRENT.get();
+        if (r == null) return fromResultsTable(rt);
+        CURRENT.remove();
+        return r;
+    }
+
+    /** Peaks from the X, Y and (if present) Votes or Area columns of rt. */
+    public static PipelineResult fromResultsTable(ResultsTable rt) {
+        PipelineResult r = new PipelineResult();
+        String weight = rt.columnExists("Area") ? "Area" : "Votes";
+        boolean hasWeight = rt.columnExists(weight);
+        r.clearPeaks(weight);
+        for (int i = 0; i < rt.getCounter(); i++) {
+            r.addPeak(rt.getValue("X", i), rt.getValue("Y", i), hasWeight ? rt.getValue(weight, i) : 0);
+        }
+        return r;
+    }
+
+    public int peakCount() {
+        return peakCount;
+    }
+
+    public double peakX(int i) {
+        return peakX[i];
+    }
+
+    public double peakY(int i) {
+        return peakY[i];
+    }
+
+    public double peakWeight(int i) {
+        return peakWeight[i];
+    }
+
+    public int bandCount() {
+        return bandCount;
+    }
+
+    public int bandTop(int i) {
+        return bandTop[i];
+    }
+
+    public int bandBottom(int i) {
+        return bandBottom[i];
+    }
+
+    public int boxCount() {
+        return boxCount;
+    }
+
+    /** Box i as {x, y, width, height}. */
+    public int[] box(int i) {
+        return new int[]{boxX[i], boxY[i], boxWidth[i], boxHeight[i]};
+    }
+
+    /** Drops the peaks (and everything derived from them); weights will be named weightColumn. */
+    public void clearPeaks(String weightColumn) {
+        this.weightColumn = weightColumn;
+        peakCount = 0;
+        bandCount = 0;
+        boxCount = 0;
+    }
+
+    public void addPeak(double x, double y, double weight) {
+        if (peakCount == peakX.length) {
+            peakX = Arrays.copyOf(peakX, 2 * peakCount);
+            peakY = Arrays.copyOf(peakY, 2 * peakCount);
+            peakWeight = Arrays.copyOf(peakWeight, 2 * peakCount);
+        }
+        peakX[peakCount] = x;
+        peakY[peakCount] = y;
+        peakWeight[peakCount] = weight;
+        peakCount++;
+    }
+
+    public void clearBands() {
+        bandCount = 0;
+        boxCount = 0;
+    }
+
+    public void addBand(int top, int bottom) {
+        if (bandCount == bandTop.length) {
+            bandTop = Arrays.copyOf(bandTop, 2 * bandCount);
+            bandBottom = Arrays.copyOf(bandBottom, 2 * bandCount);
+        }
+        bandTop[bandCount] = top;
+        bandBottom[bandCount] = bottom;
+        bandCount++;
+    }
+
+    public void addBox(int x, int y, int width, int height) {
+        if (boxCount == boxX.length) {
+            boxX = Arrays.copyOf(boxX, 2 * boxCount);
+            boxY = Arrays.copyOf(boxY, 2 * boxCount);
+            boxWidth = Arrays.copyOf(boxWidth, 2 * boxCount);
+            boxHeight = Arrays.copyOf(boxHeight, 2 * boxCount);
+        }
+        boxX[boxCount] = x;
+        boxY[boxCount] = y;
+        boxWidth[boxCount] = width;
+        boxHeight[boxCount] = height;
+        boxCount++;
+    }
+
+    /**
+     * Writes the peaks to rt, replacing its contents, in the column order the stages always
+     * used: Area, X, Y for particles, X, Y, Votes for Hough peaks.
+     */
+    public void mirrorPeaks(ResultsTable rt) {
+        boolean area = weightColumn.equals("Area");
+        rt.reset();
+        for (int i = 0; i < peakCount; i++) {
+            rt.incrementCounter();
+            if (area) rt.addValue("Area", peakWeight[i]);
+            rt.addValue("X", peakX[i]);
+            rt.addValue("Y", peakY[i]);
+            if (!area) rt.addValue(weightColumn, peakWeight[i]);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Scalar inner loops over raw 8-bit rows; get() returns PixelKernelsVector instead when that class
+ * was compiled and jdk.incubator.vector is enabled (-DPixelKernels.scalar=true forces these).
+ */
+public class PixelKernels {
+
+    private static final PixelKernels INSTANCE = load();
+
+    public static PixelKernels get() {
+        return INSTANCE;
+    }
+
+    private static PixelKernels load() {
+        if (Boolean.getBoolean("PixelKernels.scalar")) return new PixelKernels();
+        try {
+            Class<?> c = Class.forName("PixelKernelsVector");
+            return (PixelKernels) c.getDeclaredConstructor().newInstance();
+        } catch (Throwable e) {
+            // Module not enabled (NoClassDefFoundError) or class not compiled: stay scalar
+            return new PixelKernels();
+        }
+    }
+
+    /**
+     * gx[x] for row y of a width x height image: Sobel [-1 0 1; -2 0 2; -1 0 1] with replicated
+     * borders (as Convolve does), not clamped.
+     */
+    public void sobelX(byte[] src, int width, int height, int y, int[] gx) {
+        int up = Math.max(0, y - 1) * width;
+        int mid = y * width;
+        int down = Math.min(height - 1, y + 1) * width;
+        for (int x = 0; x < width; x++) {
+            int l = Math.max(0, x - 1);
+            int r = Math.min(width - 1, x + 1);
+            gx[x] = (src[up + r] & 0xff) - (src[up + l] & 0xff)
+                    + 2 * ((src[mid + r] & 0xff) - (src[mid + l] & 0xff))
+                    + (src[down + r] & 0xff) - (src[down + l] & 0xff);
+        }
+    }
+
+    /**
+     * Packs n pixels from src[offset] into bits (pixel b -> bit b & 63 of word dst[dstOffset + b / 64]),
+     * set where lo <= value <= hi. Bits past n in the last word are cleared.
+     */
+    public void packThreshold(byte[] src, int offset, int n, int lo, int hi, long[] dst, int dstOffset) {
+        int words = (n + 63) >>> 6;
+        for (int w = 0; w < words; w++) {
+            long word = 0;
+            int x0 = w << 6;
+            int end = Math.min(64, n - x0);
+            for (int b = 0; b < end; b++) {
+                int v = src[offset + x0 + b] & 0xff;
+                if (v >= lo && v <= hi) word |= 1L << b;
+            }
+            dst[dstOffset + w] = word;
+        }
+    }
+
+    /** pixels[k] = min(pixels[k], max) for all k. */
+    public void clampMax(byte[] pixels, int max) {
+        for (int k = 0; k < pixels.length; k++) {
+            if ((pixels[k] & 0xff) > max) pixels[k] = (byte) max;
+        }
+    }
+}
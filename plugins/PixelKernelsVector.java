@@ -0,0 +1,104 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * PixelKernels loops on the Java Vector API (jdk.incubator.vector), loaded by name from
+ * PixelKernels.get().
+ */
+public final class PixelKernelsVector extends PixelKernels {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    /** As many byte lanes as INTS has int lanes, for widening loads. */
+    private static final VectorSpecies<Byte> BYTES_NARROW =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * 8));
+    /** 16, 32 or 64 lanes, so a whole number of vectors fills one 64-bit mask word. */
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    public void sobelX(byte[] src, int width, int height, int y, int[] gx) {
+        int lanes = INTS.length();
+        if (width < lanes + 2) {
+            super.sobelX(src, width, height, y, gx);
+            return;
+        }
+        int up = Math.max(0, y - 1) * width;
+        int mid = y * width;
+        int down = Math.min(height - 1, y + 1) * width;
+
+        // Interior columns 1 .. width - 2: x - 1 and x + 1 stay inside the row
+        int x = 1;
+        for (; x + lanes <= width - 1; x += lanes) {
+            IntVector d = widen(src, up + x + 1).sub(widen(src, up + x - 1))
+                    .add(widen(src, mid + x + 1).sub(widen(src, mid + x - 1)).mul(2))
+                    .add(widen(src, down + x + 1).sub(widen(src, down + x - 1)));
+            d.intoArray(gx, x);
+        }
+        for (; x < width - 1; x++) {
+            gx[x] = (src[up + x + 1] & 0xff) - (src[up + x - 1] & 0xff)
+                    + 2 * ((src[mid + x + 1] & 0xff) - (src[mid + x - 1] & 0xff))
+                    + (src[down + x + 1] & 0xff) - (src[down + x - 1] & 0xff);
+        }
+        // Replicated borders
+        gx[0] = edge(src, up, mid, down, 0, 1);
+        gx[width - 1] = edge(src, up, mid, down, width - 2, width - 1);
+    }
+
+    private static IntVector widen(byte[] src, int offset) {
+        ByteVector b = ByteVector.fromArray(BYTES_NARROW, src, offset);
+        return ((IntVector) b.convertShape(VectorOperators.B2I, INTS, 0)).and(0xff);
+    }
+
+    private static int edge(byte[] src, int up, int mid, int down, int l, int r) {
+        return (src[up + r] & 0xff) - (src[up + l] & 0xff)
+                + 2 * ((src[mid + r] & 0xff) - (src[mid + l] & 0xff))
+                + (src[down + r] & 0xff) - (src[down + l] & 0xff);
+    }
+
+    @Override
+    public void packThreshold(byte[] src, int offset, int n, int lo, int hi, long[] dst, int dstOffset) {
+        if (lo > hi || lo > 255 || hi < 0) {
+            super.packThreshold(src, offset, n, lo, hi, dst, dstOffset);
+            return;
+        }
+        byte bLo = (byte) Math.max(0, lo);
+        byte bHi = (byte) Math.min(255, hi);
+        int lanes = BYTES.length();
+        int full = n >>> 6;
+        for (int w = 0; w < full; w++) {
+            long word = 0;
+            // One 64-pixel word from one 512-bit compare, or two 256-bit ones
+            for (int part = 0; part < 64; part += lanes) {
+                ByteVector v = ByteVector.fromArray(BYTES, src, offset + (w << 6) + part);
+                VectorMask<Byte> m = v.compare(VectorOperators.UNSIGNED_GE, bLo)
+                        .and(v.compare(VectorOperators.UNSIGNED_LE, bHi));
+                word |= m.toLong() << part;
+            }
+            dst[dstOffset + w] = word;
+        }
+        if ((n & 63) != 0) {
+            int done = full << 6;
+            super.packThreshold(src, offset + done, n - done, lo, hi, dst, dstOffset + full);
+        }
+    }
+
+    @Override
+    public void clampMax(byte[] pixels, int max) {
+        if (max >= 255) return;
+        // Unsigned min through the signed range: flip the sign bit, min, flip back
+        byte limit = (byte) (Math.max(0, max) ^ 0x80);
+        int lanes = BYTES.length();
+        int k = 0;
+        for (; k + lanes <= pixels.length; k += lanes) {
+            ByteVector v = ByteVector.fromArray(BYTES, pixels, k);
+            v.lanewise(VectorOperators.XOR, (byte) 0x80).min(limit)
+                    .lanewise(VectorOperators.XOR, (byte) 0x80).intoArray(pixels, k);
+        }
+        for (; k < pixels.length; k++) {
+            if ((pixels[k] & 0xff) > max) pixels[k] = (byte) max;
+        }
+    }
+}
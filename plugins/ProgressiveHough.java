@@ -0,0 +1,131 @@
+import java.util.Arrays;
+
+/**
+ * Progressive probabilistic voting: random batches are voted until the top-k rows around pi/2
+ * are stable and clear of the runner-up, then the votes are scaled to the full point count.
+ */
+public final class ProgressiveHough {
+
+    int topK = 5;
+    double batchFraction = 0.02;
+    int minBatch = 256;
+    int stableBatches = 1;
+    double z = 2.0;
+    int minRhoDistance = 15;
+    long seed = 1;
+
+    /** Points voted by the last call, and whether the stopping rule was met before running out. */
+    int consumed;
+    int batches;
+    boolean converged;
+
+    public ProgressiveHough(int topK, double batchFraction) {
+        this.topK = Math.max(1, topK);
+        this.batchFraction = batchFraction;
+    }
+
+    public void vote(HoughAccumulator acc, EdgePoints points, int threads) {
+        EdgePoints order = points.shuffled(seed);
+        int n = order.size();
+        int batch = Math.max(minBatch, (int) (n * batchFraction));
+
+        int[] band = bandColumns(acc);
+        int[] previous = null;
+        int stable = 0;
+
+        consumed = 0;
+        batches = 0;
+        converged = false;
+
+        while (consumed < n) {
+            int next = Math.min(n, consumed + batch);
+            acc.votePointRange(order, consumed, next, threads);
+            consumed = next;
+            batches++;
+
+            double[] strength = new double[2];
+            int[] peaks = topPeaks(acc, band, strength);
+            stable = sameRows(peaks, previous) ? stable + 1 : 0;
+            previous = peaks;
+
+            // strength holds the k-th and (k+1)-th responses
+            boolean separated = strength[0] - strength[1] > z * Math.sqrt(strength[0] + strength[1]);
+            if (peaks.length > 0 && stable >= stableBatches && separated) {
+                converged = true;
+                break;
+            }
+        }
+
+        if (consumed < n && consumed > 0)
+            acc.scale((double) n / consumed);
+    }
+
+    /** Accumulator columns within pi/2 +- pi/20. */
+    private static int[] bandColumns(HoughAccumulator acc) {
+        int[] cols = new int[acc.thetaBins];
+        int n = 0;
+        double tol = Math.PI / 20 + 1e-9;
+        for (int i = 0; i < acc.thetaBins; i++) {
+            if (Math.abs(acc.theta(i) - Math.PI / 2) <= tol) cols[n++] = i;
+        }
+        return Arrays.copyOf(cols, n);
+    }
+
+    /**
+     * Rho bins (ascending) of the topK strongest local maxima of the band response, at least
+     * minRhoDistance apart. strength receives the response of the weakest of them and of the
+     * first runner-up, the next peak far enough from all of them (0 when there is none).
+     */
+    int[] topPeaks(HoughAccumulator acc, int[] band, double[] strength) {
+        int rhoBins = acc.rhoBins;
+        long[] response = new long[rhoBins];
+        for (int j = 0; j < rhoBins; j++) {
+            long sum = 0;
+            for (int i : band) sum += acc.get(i, j);
+            response[j] = sum;
+        }
+
+        // Local maxima packed as (response << 32 | rho) so a primitive sort ranks them
+        long[] candidates = new long[rhoBins];
+        int c = 0;
+        for (int j = 1; j < rhoBins - 1; j++) {
+            if (response[j] > response[j - 1] && response[j] > response[j + 1])
+                candidates[c++] = (response[j] << 32) | j;
+        }
+        Arrays.sort(candidates, 0, c);
+
+        int[] kept = new int[Math.min(c, topK)];
+        int k = 0;
+        strength[0] = 0;
+        strength[1] = 0;
+        for (int m = c - 1; m >= 0; m--) {
+            int rho = (int) candidates[m];
+            boolean farEnough = true;
+            for (int q = 0; q < k; q++) {
+                if (Math.abs(kept[q] - rho) < minRhoDistance) {
+                    farEnough = false;
+                    break;
+                }
+            }
+            if (!farEnough) continue;
+            double value = candidates[m] >>> 32;
+            if (k == topK) {
+                strength[1] = value;
+                break;
+            }
+            kept[k++] = rho;
+            strength[0] = value;
+        }
+        int[] rows = Arrays.copyOf(kept, k);
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    private static boolean sameRows(int[] a, int[] b) {
+        if (b == null || a.length != b.length) return false;
+        for (int q = 0; q < a.length; q++) {
+            if (Math.abs(a[q] - b[q]) > 1) return false;
+        }
+        return true;
+    }
+}
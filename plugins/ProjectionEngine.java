@@ -0,0 +1,131 @@
+import ij.ImagePlus;
+import ij.gui.GenericDialog;
+import ij.measure.ResultsTable;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Foreground counts per row and per column from the raw 8-bit buffer, split into row bands, and
+ * the shared body of the projection plugins.
+ */
+public final class ProjectionEngine {
+
+    /** Row and column profiles of one sweep; either is null when it was not requested. */
+    public static final class Profiles {
+        public final int[] rows;
+        public final int[] columns;
+
+        Profiles(int[] rows, int[] columns) {
+            this.rows = rows;
+            this.columns = columns;
+        }
+    }
+
+    private ProjectionEngine() {
+    }
+
+    /** Pixels with lo <= value <= hi per row. */
+    public static int[] rows(ImageProcessor ip, int lo, int hi, int threads) {
+        return project(ip, lo, hi, true, false, threads).rows;
+    }
+
+    /** Pixels with lo <= value <= hi per column. */
+    public static int[] columns(ImageProcessor ip, int lo, int hi, int threads) {
+        return project(ip, lo, hi, false, true, threads).columns;
+    }
+
+    /** Both profiles from a single sweep. */
+    public static Profiles both(ImageProcessor ip, int lo, int hi, int threads) {
+        return project(ip, lo, hi, true, true, threads);
+    }
+
+    static Profiles project(ImageProcessor ip, int lo, int hi, boolean wantRows, boolean wantColumns, int threads) {
+        int width = ip.getWidth();
+        int height = ip.getHeight();
+        int[] rows = wantRows ? new int[height] : null;
+        int bands = Math.max(1, Math.min(Parallel.threads(threads), height));
+        int[][] bandColumns = new int[bands][];
+        byte[] pixels = ip instanceof ByteProcessor ? (byte[]) ip.getPixels() : null;
+
+        Parallel.forEach(bands, bands, b -> {
+            int from = Parallel.bandStart(b, bands, height);
+            int to = Parallel.bandStart(b + 1, bands, height);
+            int[] columns = wantColumns ? new int[width] : null;
+            for (int y = from; y < to; y++) {
+                int count = 0;
+                if (pixels != null) {
+                    int row = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int v = pixels[row + x] & 0xff;
+                        if (v >= lo && v <= hi) {
+                            count++;
+                            if (columns != null) columns[x]++;
+                        }
+                    }
+                } else {
+                    for (int x = 0; x < width; x++) {
+                        int v = ip.getPixel(x, y);
+                        if (v >= lo && v <= hi) {
+                            count++;
+                            if (columns != null) columns[x]++;
+                        }
+                    }
+                }
+                if (rows != null) rows[y] = count;
+            }
+            bandColumns[b] = columns;
+        });
+
+        int[] columns = null;
+        if (wantColumns) {
+            columns = bandColumns[0];
+            for (int b = 1; b < bands; b++) {
+                for (int x = 0; x < width; x++) columns[x] += bandColumns[b][x];
+            }
+        }
+        return new Profiles(rows, columns);
+    }
+
+    /**
+     * Body of Right_Projection (byRow: bars from the right edge) and Vertical_Projection (bars
+     * from the bottom): the 255-pixel counts as a profile table, or when asked as a bar-chart
+     * image of the same size.
+     */
+    static void runProjection(ImageProcessor ip, boolean byRow, String title) {
+        GenericDialog gd = new GenericDialog(title);
+        gd.addCheckbox("Draw projection image", false);
+        gd.addNumericField("Threads (0 = all cores):", 0, 0);
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+        boolean draw = gd.getNextBoolean();
+        int threads = (int) gd.getNextNumber();
+
+        int width = ip.getWidth();
+        int height = ip.getHeight();
+        int[] counts = byRow ? rows(ip, 255, 255, threads) : columns(ip, 255, 255, threads);
+        if (!draw) {
+            // Profile only: one value per row or column instead of a full-size bar chart
+            showProfile(counts, byRow ? "Y" : "X", title);
+            return;
+        }
+        BinaryRaster projection = new BinaryRaster(width, height);
+        if (byRow) {
+            for (int y = 0; y < height; y++) projection.setRange(y, width - counts[y], width);
+        } else {
+            for (int x = 0; x < width; x++) {
+                for (int y = height - counts[x]; y < height; y++) projection.set(x, y);
+            }
+        }
+        new ImagePlus(title, projection.toProcessor(ip)).show();
+    }
+
+    /** Counts as a table with one row per index and columns indexColumn (X or Y), Count. */
+    private static void showProfile(int[] counts, String indexColumn, String title) {
+        ResultsTable rt = new ResultsTable(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            rt.setValue(indexColumn, i, i);
+            rt.setValue("Count", i, counts[i]);
+        }
+        rt.show(title);
+    }
+}
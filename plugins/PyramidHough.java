@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * Coarse-to-fine Hough voting: peaks of a downsampled accumulator are re-voted exactly at full
+ * resolution inside small theta x rho rectangles; all other cells stay 0.
+ */
+public final class PyramidHough {
+
+    int factor = 4;
+    int candidates = 20;
+
+    /** Statistics of the last call. */
+    int coarsePoints;
+    int finePoints;
+    int regions;
+
+    public PyramidHough(int factor, int candidates) {
+        this.factor = Math.max(2, factor);
+        this.candidates = Math.max(1, candidates);
+    }
+
+    public void vote(HoughAccumulator acc, EdgePoints points, int threads) {
+        int f = factor;
+
+        /* -------- Coarse level -------- */
+        EdgePoints coarsePts = points.downsample(f);
+        coarsePoints = coarsePts.size();
+        int coarseTheta = Math.max(1, (acc.thetaBins + f - 1) / f);
+        int coarseRho = Math.max(1, acc.rhoBins / f);
+        HoughAccumulator coarse = new HoughAccumulator(coarsePts.width, coarsePts.height,
+                acc.thetaMin, acc.dTheta * f, coarseTheta, coarseRho, false);
+        coarse.votePoints(coarsePts, threads);
+
+        /* -------- Candidate rectangles at full resolution -------- */
+        int[] peaks = strongestMaxima(coarse, candidates);
+        int thetaHalf = f + 2;
+        int rhoHalf = (int) Math.ceil(f * coarse.dRho / acc.dRho) + 2;
+        int[][] rects = new int[peaks.length][];
+        for (int p = 0; p < peaks.length; p++) {
+            int ic = peaks[p] % coarse.thetaBins;
+            int jc = peaks[p] / coarse.thetaBins;
+            // Coarse theta bin ic samples the same angle as full bin ic * f
+            double theta = coarse.theta(ic);
+            double rho = coarse.rho(jc) * f;
+            int i = (int) Math.round((theta - acc.thetaMin) / acc.dTheta);
+            int j = (int) Math.round((rho + acc.rMax2) / acc.dRho);
+            rects[p] = new int[]{
+                    Math.max(0, i - thetaHalf), Math.min(acc.thetaBins - 1, i + thetaHalf),
+                    Math.max(0, j - rhoHalf), Math.min(acc.rhoBins - 1, j + rhoHalf)};
+        }
+        rects = mergeOverlapping(rects);
+        regions = rects.length;
+
+        /* -------- Fine level: exact votes inside the rectangles -------- */
+        int m = rects.length;
+        double[] cos = new double[m], sin = new double[m], rc = new double[m];
+        double[] rhoSlack = new double[m], thetaSlack = new double[m];
+        for (int r = 0; r < m; r++) {
+            double tc = acc.theta(0) + (rects[r][0] + rects[r][1]) / 2.0 * acc.dTheta;
+            cos[r] = Math.cos(tc);
+            sin[r] = Math.sin(tc);
+            rc[r] = (rects[r][2] + rects[r][3]) / 2.0 * acc.dRho - acc.rMax2;
+            rhoSlack[r] = ((rects[r][3] - rects[r][2]) / 2.0 + 1) * acc.dRho;
+            thetaSlack[r] = ((rects[r][1] - rects[r][0]) / 2.0 + 1) * acc.dTheta;
+        }
+
+        int w2 = acc.imageWidth / 2;
+        int h2 = acc.imageHeight / 2;
+        int[][] regionList = rects;
+        // Workers own disjoint theta columns; a point is counted once however many it reaches
+        byte[] reached = new byte[points.count];
+        acc.voteParallel(points.count, threads, (iLo, iHi) -> {
+            for (int k = 0; k < points.count; k++) {
+                int col = points.xs[k] - w2;
+                int row = points.ys[k] - h2;
+                double radius = Math.hypot(col, row);
+                for (int r = 0; r < m; r++) {
+                    int[] rect = regionList[r];
+                    int lo = Math.max(iLo, rect[0]);
+                    int hi = Math.min(iHi, rect[1]);
+                    if (lo > hi) continue;
+                    // |r(t) - r(tc)| <= radius * |t - tc|, so farther points cannot reach the rectangle
+                    double distance = Math.abs(col * cos[r] + row * sin[r] - rc[r]);
+                    if (distance > rhoSlack[r] + thetaSlack[r] * radius) continue;
+                    acc.votePoint(col, row, lo, hi, rect[2], rect[3]);
+                    reached[k] = 1;
+                }
+            }
+        });
+        int used = 0;
+        for (byte b : reached) used += b;
+        finePoints = used;
+    }
+
+    /** Cell indices of the n strongest 3x3 local maxima of the accumulator. */
+    private static int[] strongestMaxima(HoughAccumulator acc, int n) {
+        int tb = acc.thetaBins;
+        int rb = acc.rhoBins;
+        long[] found = new long[Math.min(tb * rb, 1 << 16)];
+        int c = 0;
+        for (int j = 0; j < rb; j++) {
+            for (int i = 0; i < tb; i++) {
+                int v = acc.get(i, j);
+                if (v == 0) continue;
+                boolean isMax = true;
+                for (int dj = -1; dj <= 1 && isMax; dj++) {
+                    for (int di = -1; di <= 1; di++) {
+                        int ii = i + di, jj = j + dj;
+                        if ((di != 0 || dj != 0) && ii >= 0 && ii < tb && jj >= 0 && jj < rb
+                                && acc.get(ii, jj) > v) {
+                            isMax = false;
+                            break;
+                        }
+                    }
+                }
+                if (!isMax) continue;
+                if (c == found.length) found = Arrays.copyOf(found, found.length * 2);
+                found[c++] = ((long) v << 32) | (j * tb + i);
+            }
+        }
+        Arrays.sort(found, 0, c);
+        int k = Math.min(n, c);
+        int[] cells = new int[k];
+        for (int q = 0; q < k; q++) {
+            cells[q] = (int) found[c - 1 - q];
+        }
+        return cells;
+    }
+
+    /** Replaces overlapping rectangles {iLo, iHi, jLo, jHi} by their bounding boxes until all are disjoint. */
+    private static int[][] mergeOverlapping(int[][] rects) {
+        int n = rects.length;
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int a = 0; a < n && !merged; a++) {
+                for (int b = a + 1; b < n; b++) {
+                    int[] r = rects[a], s = rects[b];
+                    if (r[0] <= s[1] && s[0] <= r[1] && r[2] <= s[3] && s[2] <= r[3]) {
+                        rects[a] = new int[]{Math.min(r[0], s[0]), Math.max(r[1], s[1]),
+                                Math.min(r[2], s[2]), Math.max(r[3], s[3])};
+                        rects[b] = rects[--n];
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(rects, n);
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Separable Gaussian blur of a float image with Deriche's fourth-order recursive filter, so the
+ * cost per pixel does not depend on sigma. Lines are mirrored at the borders.
+ */
+public final class RecursiveGaussian {
+
+    private static final int COLUMN_BLOCK = 64;
+
+    /**
+     * Deriche's fit of the unit Gaussian for x >= 0:
+     * (A0 cos(W0 x) + A1 sin(W0 x)) exp(-B0 x) + (C0 cos(W1 x) + C1 sin(W1 x)) exp(-B1 x).
+     */
+    private static final double A0 = 1.680, A1 = 3.735, B0 = 1.783, B1 = 1.723;
+    private static final double C0 = -0.6803, C1 = -0.2598, W0 = 0.6318, W1 = 1.997;
+
+    final double sigma;
+    /** Poles p_j = exp((-B_j + i W_j) / sigma) and weights g_j of the two sections. */
+    final double p0r, p0i, p1r, p1i;
+    final double g0r, g0i, g1r, g1i;
+    /** 1 / sum of the impulse response over all offsets. */
+    final double scale;
+
+    RecursiveGaussian(double sigma) {
+        this.sigma = sigma;
+        double e0 = Math.exp(-B0 / sigma), e1 = Math.exp(-B1 / sigma);
+        p0r = e0 * Math.cos(W0 / sigma);
+        p0i = e0 * Math.sin(W0 / sigma);
+        p1r = e1 * Math.cos(W1 / sigma);
+        p1i = e1 * Math.sin(W1 / sigma);
+        // h(k) = Re(g0 p0^k + g1 p1^k) for k >= 0
+        g0r = A0;
+        g0i = -A1;
+        g1r = C0;
+        g1i = -C1;
+        // Sum over all k of h(|k|) = Re(sum_j g_j (1 + p_j) / (1 - p_j))
+        scale = 1 / (realRatio(g0r, g0i, p0r, p0i) + realRatio(g1r, g1i, p1r, p1i));
+    }
+
+    /** Re(g (1 + p) / (1 - p)). */
+    private static double realRatio(double gr, double gi, double pr, double pi) {
+        double nr = 1 + pr, ni = pi;
+        double dr = 1 - pr, di = -pi;
+        double d = dr * dr + di * di;
+        double qr = (nr * dr + ni * di) / d;
+        double qi = (ni * dr - nr * di) / d;
+        return gr * qr - gi * qi;
+    }
+
+    /** Blurs pixels (width x height) in place with sigmaX along rows and sigmaY along columns. */
+    public static void blur(float[] pixels, int width, int height, double sigmaX, double sigmaY, int threads) {
+        if (sigmaX >= 0.5) {
+            RecursiveGaussian g = new RecursiveGaussian(Math.min(sigmaX, 2.0 * width));
+            int bands = Math.min(Parallel.threads(threads), height);
+            Parallel.forEach(bands, bands, t -> {
+                int from = Parallel.bandStart(t, bands, height);
+                int to = Parallel.bandStart(t + 1, bands, height);
+                Lines lines = g.new Lines(width, 1);
+                for (int y = from; y < to; y++) lines.filter(pixels, y * width, 1, 1);
+            });
+        }
+        if (sigmaY >= 0.5) {
+            RecursiveGaussian g = new RecursiveGaussian(Math.min(sigmaY, 2.0 * height));
+            int blocks = (width + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+            int bands = Math.min(Parallel.threads(threads), blocks);
+            Parallel.forEach(bands, bands, t -> {
+                int from = Parallel.bandStart(t, bands, blocks);
+                int to = Parallel.bandStart(t + 1, bands, blocks);
+                Lines lines = g.new Lines(height, COLUMN_BLOCK);
+                for (int k = from; k < to; k++) {
+                    int x = k * COLUMN_BLOCK;
+                    lines.filter(pixels, x, width, Math.min(COLUMN_BLOCK, width - x));
+                }
+            });
+        }
+    }
+
+    /** Index of sample i of the mirrored (period 2n) extension of a line of n samples. */
+    static int mirror(int i, int n) {
+        int m = i % (2 * n);
+        if (m < 0) m += 2 * n;
+        return m < n ? m : 2 * n - 1 - m;
+    }
+
+    /**
+     * Scratch buffers of one worker for up to maxLanes parallel lines of n samples; lane l of
+     * sample i is at base + l + i * step.
+     */
+    final class Lines {
+
+        final int n;
+        final int margin;
+        final boolean periodic;
+        /** 1 / (1 - p_j^2n) of both sections, for the periodic fixed point. */
+        final double f0r, f0i, f1r, f1i;
+        final float[] source;
+        /** Complex states of both sections and the last input, per lane. */
+        final double[] z0r, z0i, z1r, z1i, last;
+
+        Lines(int n, int maxLanes) {
+            this.n = n;
+            long wanted = (long) Math.ceil(6 * sigma);
+            margin = (int) Math.min(2L * n, wanted);
+            periodic = wanted >= 2L * n;
+            double[] f0 = fixedPointFactor(p0r, p0i, 2 * n);
+            double[] f1 = fixedPointFactor(p1r, p1i, 2 * n);
+            f0r = f0[0];
+            f0i = f0[1];
+            f1r = f1[0];
+            f1i = f1[1];
+            source = new float[n * maxLanes];
+            z0r = new double[maxLanes];
+            z0i = new double[maxLanes];
+            z1r = new double[maxLanes];
+            z1i = new double[maxLanes];
+            last = new double[maxLanes];
+        }
+
+        void filter(float[] p, int base, int step, int lanes) {
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(p, base + i * step, source, i * lanes, lanes);
+            }
+
+            // Causal part, warmed up over the mirrored samples before the line, into p
+            reset(0, lanes);
+            for (int i = -margin; i < 0; i++) causal(mirror(i, n) * lanes, null, 0, lanes);
+            if (periodic) fixedPoint(lanes);
+            for (int i = 0; i < n; i++) causal(i * lanes, p, base + i * step, lanes);
+
+            // Anti-causal part, warmed up over the mirrored samples after the line, added to p
+            int end = n - 1 + margin;
+            reset(mirror(end + 1, n) * lanes, lanes);
+            for (int i = end; i >= n; i--) antiCausal(mirror(i, n) * lanes, null, 0, lanes);
+            if (periodic) fixedPoint(lanes);
+            for (int i = n - 1; i >= 0; i--) antiCausal(i * lanes, p, base + i * step, lanes);
+        }
+
+        /** Zero section states; last input = source[from + lane]. */
+        private void reset(int from, int lanes) {
+            for (int l = 0; l < lanes; l++) {
+                z0r[l] = z0i[l] = z1r[l] = z1i[l] = 0;
+                last[l] = source[from + l];
+            }
+        }
+
+        /** z_j = x[i] + p_j z_j; out = Re(g0 z0 + g1 z1), the response over offsets k >= 0. */
+        private void causal(int from, float[] out, int to, int lanes) {
+            for (int l = 0; l < lanes; l++) {
+                double x = source[from + l];
+                double ar = x + p0r * z0r[l] - p0i * z0i[l];
+                double ai = p0r * z0i[l] + p0i * z0r[l];
+                double br = x + p1r * z1r[l] - p1i * z1i[l];
+                double bi = p1r * z1i[l] + p1i * z1r[l];
+                z0r[l] = ar;
+                z0i[l] = ai;
+                z1r[l] = br;
+                z1i[l] = bi;
+                if (out != null) out[to + l] = (float) (g0r * ar - g0i * ai + g1r * br - g1i * bi);
+            }
+        }
+
+        /** z_j = p_j (x[i+1] + z_j), the response over offsets k >= 1; out gets the scaled sum. */
+        private void antiCausal(int from, float[] out, int to, int lanes) {
+            for (int l = 0; l < lanes; l++) {
+                double x = last[l];
+                double tr = x + z0r[l], ti = z0i[l];
+                double ar = p0r * tr - p0i * ti;
+                double ai = p0r * ti + p0i * tr;
+                tr = x + z1r[l];
+                ti = z1i[l];
+                double br = p1r * tr - p1i * ti;
+                double bi = p1r * ti + p1i * tr;
+                z0r[l] = ar;
+                z0i[l] = ai;
+                z1r[l] = br;
+                z1i[l] = bi;
+                last[l] = source[from + l];
+                if (out != null) {
+                    out[to + l] = (float) ((out[to + l] + g0r * ar - g0i * ai + g1r * br - g1i * bi) * scale);
+                }
+            }
+        }
+
+        /** States after one period from zero -> states of the periodic input from infinity. */
+        private void fixedPoint(int lanes) {
+            for (int l = 0; l < lanes; l++) {
+                double r = z0r[l], i = z0i[l];
+                z0r[l] = r * f0r - i * f0i;
+                z0i[l] = r * f0i + i * f0r;
+                r = z1r[l];
+                i = z1i[l];
+                z1r[l] = r * f1r - i * f1i;
+                z1i[l] = r * f1i + i * f1r;
+            }
+        }
+    }
+
+    /** 1 / (1 - p^period) as {re, im}. */
+    private static double[] fixedPointFactor(double pr, double pi, int period) {
+        double modulus = Math.pow(Math.hypot(pr, pi), period);
+        double angle = Math.atan2(pi, pr) * period;
+        double dr = 1 - modulus * Math.cos(angle);
+        double di = -modulus * Math.sin(angle);
+        double d = dr * dr + di * di;
+        return new double[]{dr / d, -di / d};
+    }
+}
@@ -0,0 +1,108 @@
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.GenericDialog;
+import ij.plugin.ContrastEnhancer;
+import ij.plugin.filter.PlugInFilter;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Process > FFT > Bandpass Filter with the same options, as a difference of recursive Gaussians
+ * (see RecursiveGaussian) instead of a padded FFT; results differ slightly near the edges.
+ */
+public class Recursive_Bandpass implements PlugInFilter {
+
+    static final String[] STRIPES = {"None", "Horizontal", "Vertical"};
+
+    ImagePlus imp;
+
+    public int setup(String arg, ImagePlus imp) {
+        this.imp = imp;
+        return DOES_8G | DOES_32;
+    }
+
+    public void run(ImageProcessor ip) {
+
+        GenericDialog gd = new GenericDialog("Recursive Bandpass");
+        gd.addNumericField("Filter_large structures down to", 40, 0, 4, "pixels");
+        gd.addNumericField("Filter_small structures up to", 3, 0, 4, "pixels");
+        gd.addChoice("Suppress stripes:", STRIPES, STRIPES[0]);
+        gd.addNumericField("Tolerance of direction:", 5, 0, 2, "%");
+        gd.addCheckbox("Autoscale after filtering", true);
+        gd.addCheckbox("Saturate image when autoscaling", true);
+        gd.addNumericField("Threads (0 = all cores):", 0, 0);
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+
+        double filterLarge = gd.getNextNumber();
+        double filterSmall = gd.getNextNumber();
+        int stripes = gd.getNextChoiceIndex();
+        double tolerance = gd.getNextNumber();
+        boolean autoscale = gd.getNextBoolean();
+        boolean saturate = gd.getNextBoolean();
+        int threads = (int) gd.getNextNumber();
+        if (gd.invalidNumber() || tolerance < 0 || tolerance > 100) {
+            IJ.error("Recursive Bandpass", "Invalid input number");
+            return;
+        }
+
+        FloatProcessor fp = filter(ip, filterLarge, filterSmall, stripes, tolerance, threads);
+        if (autoscale) new ContrastEnhancer().stretchHistogram(fp, saturate ? 1.0 : 0.0);
+        else fp.resetMinAndMax();
+
+        if (ip.getBitDepth() == 8) {
+            ip.setPixels(fp.convertToByte(autoscale).getPixels());
+        } else {
+            ip.setPixels(fp.getPixels());
+            ip.setMinAndMax(fp.getMin(), fp.getMax());
+        }
+    }
+
+    /**
+     * Bandpass of ip as a new float image. Sizes are in pixels as in the FFT filter; a size of
+     * 0 (or less) switches that side of the band off. stripes indexes STRIPES.
+     */
+    public static FloatProcessor filter(ImageProcessor ip, double filterLarge, double filterSmall,
+                                        int stripes, double tolerance, int threads) {
+        int width = ip.getWidth();
+        int height = ip.getHeight();
+        float[] small = (float[]) ip.convertToFloat().getPixels();
+        if (small == ip.getPixels()) small = small.clone();
+
+        double sum = 0;
+        for (float v : small) sum += v;
+        float mean = (float) (sum / small.length);
+
+        double sigmaSmall = filterSmall > 0 ? filterSmall * Math.sqrt(2) / Math.PI : 0;
+        double sigmaLarge = filterLarge > 0 ? filterLarge * Math.sqrt(2) / Math.PI : 0;
+
+        float[] band;
+        if (sigmaLarge > 0) {
+            float[] large = small.clone();
+            double sigma = Math.sqrt(sigmaLarge * sigmaLarge + sigmaSmall * sigmaSmall);
+            RecursiveGaussian.blur(large, width, height, sigma, sigma, threads);
+            RecursiveGaussian.blur(small, width, height, sigmaSmall, sigmaSmall, threads);
+            for (int k = 0; k < small.length; k++) small[k] -= large[k];
+            band = small;
+        } else {
+            RecursiveGaussian.blur(small, width, height, sigmaSmall, sigmaSmall, threads);
+            for (int k = 0; k < small.length; k++) small[k] -= mean;
+            band = small;
+        }
+
+        if (stripes != 0) {
+            // Same padded size and sharpness as the FFT filter
+            int maxN = 2;
+            while (maxN < 1.5 * Math.max(width, height)) maxN *= 2;
+            double sharpness = (100.0 - tolerance) / 100.0;
+            double sigma = maxN * sharpness / (Math.PI * Math.sqrt(2));
+            float[] stripe = band.clone();
+            if (stripes == 2) RecursiveGaussian.blur(stripe, width, height, 0, sigma, threads);
+            else RecursiveGaussian.blur(stripe, width, height, sigma, 0, threads);
+            for (int k = 0; k < band.length; k++) band[k] -= stripe[k];
+        }
+
+        for (int k = 0; k < band.length; k++) band[k] += mean;
+        return new FloatProcessor(width, height, band);
+    }
+}
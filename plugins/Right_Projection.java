@@ -13,29 +13,7 @@ public class Right_Projection implements PlugInFilter {
     }
 
     public void run(ImageProcessor ip) {
-        // 1) Make sure the image is binary
-        // 2) For each row count the number of 1's
-        // 3) Make the pixels from `width - count` to `width` 1, the rest 0
-        // 4) Display the resulting image
-
-        int width = ip.getWidth();
-        int height = ip.getHeight();
-        ImageProcessor resultIp = ip.duplicate();
-        resultIp.setValue(0);
-        resultIp.fill();
-        resultIp.setValue(255);
-        for (int y = 0; y < height; y++) {
-            int count = 0;
-            for (int x = 0; x < width; x++) {
-                if (ip.getPixel(x, y) == 255) {
-                    count++;
-                }
-            }
-            for (int x = width - count; x < width; x++) {
-                resultIp.putPixel(x, y, 255);
-            }
-        }
-        new ImagePlus("Right Projection", resultIp).show();
+        // Count of 255 pixels per row: a profile table, or with "draw" bars from the right edge
+        ProjectionEngine.runProjection(ip, true, "Right Projection");
     }
-
 }
@@ -0,0 +1,212 @@
+import ij.ImagePlus;
+import ij.plugin.filter.GaussianBlur;
+import ij.plugin.filter.PlugInFilter;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import java.util.Arrays;
+
+/**
+ * Steps 2-4 of LineDetection.ijm (Sobel edge masks, horizontal dilation, vertical erosion,
+ * Median radius=2) in one streaming pass over the 8-bit pixels.
+ */
+public class Vertical_Edge_Extractor implements PlugInFilter {
+
+    private static final int MEDIAN_RADIUS = 2;
+
+    ImagePlus imp;
+
+    int width;
+    int height;
+    byte[] src;
+    final PixelKernels kernels = PixelKernels.get();
+
+    /** Foreground ranges [lo, hi] of the east, west and dilation masks. */
+    int eastLo, eastHi, westLo, westHi, dilateLo, dilateHi;
+
+    public int setup(String arg, ImagePlus imp) {
+        this.imp = imp;
+        return DOES_8G | NO_CHANGES;
+    }
+
+    public void run(ImageProcessor ip) {
+        ImageProcessor out = extract(ip);
+        ImagePlus result = new ImagePlus(imp.getShortTitle() + "-vertical-edges", out);
+        result.show();
+    }
+
+    /** Binary (0 / 255) vertical edges of the 8-bit image, same as macro steps 2-4. */
+    public ImageProcessor extract(ImageProcessor ip) {
+        width = ip.getWidth();
+        height = ip.getHeight();
+        src = (byte[]) ip.getPixels();
+
+        /* -------- Sweep 1: Sobel histograms -> east / west thresholds -------- */
+        int[] eastHist = new int[256];
+        int[] westHist = new int[256];
+        int[] gx = new int[width];
+        for (int y = 0; y < height; y++) {
+            sobelRow(y, gx);
+            for (int x = 0; x < width; x++) {
+                eastHist[clamp(gx[x])]++;
+                westHist[clamp(-gx[x])]++;
+            }
+        }
+        int[] range = maskRange(eastHist);
+        eastLo = range[0];
+        eastHi = range[1];
+        range = maskRange(westHist);
+        westLo = range[0];
+        westHi = range[1];
+
+        /* -------- Sweep 2: horizontal neighbour counts -> dilation threshold -------- */
+        byte[] edges = new byte[width];
+        int[] dilateHist = new int[256];
+        for (int y = 0; y < height; y++) {
+            edgeRow(y, gx, edges);
+            for (int x = 0; x < width; x++) {
+                dilateHist[mean3(horizontalCount(edges, x))]++;
+            }
+        }
+        range = maskRange(dilateHist);
+        dilateLo = range[0];
+        dilateHi = range[1];
+
+        /* -------- Sweep 3: dilate -> erode -> median through ring buffers -------- */
+        byte[][] dilated = new byte[4][width];
+        byte[][] eroded = new byte[2 * MEDIAN_RADIUS + 2][width];
+        int nextDilated = 0;
+        int nextEroded = 0;
+
+        ByteProcessor out = new ByteProcessor(width, height);
+        byte[] outPixels = (byte[]) out.getPixels();
+        int[] count = new int[width + 2 * MEDIAN_RADIUS + 1];
+        int[] rowDx = Binary_Median.kernelHalfWidths(MEDIAN_RADIUS);
+        int threshold = medianCount(rowDx) / 2 + 1;
+
+        for (int y = 0; y < height; y++) {
+            int needEroded = Math.min(height - 1, y + MEDIAN_RADIUS);
+            while (nextEroded <= needEroded) {
+                int needDilated = Math.min(height - 1, nextEroded + 1);
+                while (nextDilated <= needDilated) {
+                    edgeRow(nextDilated, gx, edges);
+                    dilateRow(edges, dilated[nextDilated % 4]);
+                    nextDilated++;
+                }
+                byte[] above = dilated[Math.max(0, nextEroded - 1) % 4];
+                byte[] here = dilated[nextEroded % 4];
+                byte[] below = dilated[Math.min(height - 1, nextEroded + 1) % 4];
+                byte[] e = eroded[nextEroded % eroded.length];
+                for (int x = 0; x < width; x++) {
+                    e[x] = (byte) (above[x] + here[x] + below[x] >= 2 ? 1 : 0);
+                }
+                nextEroded++;
+            }
+
+            // Circular kernel: rows dy = -r..r, each spanning +-rowDx[|dy|] columns
+            Arrays.fill(count, 0);
+            for (int dy = -MEDIAN_RADIUS; dy <= MEDIAN_RADIUS; dy++) {
+                int yy = Math.max(0, Math.min(height - 1, y + dy));
+                addRowWindow(eroded[yy % eroded.length], rowDx[Math.abs(dy)], count);
+            }
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if (count[x] >= threshold) outPixels[offset + x] = (byte) 255;
+            }
+        }
+        return out;
+    }
+
+    /** Horizontal Sobel [-1 0 1; -2 0 2; -1 0 1] of row y with replicated borders. */
+    private void sobelRow(int y, int[] gx) {
+        kernels.sobelX(src, width, height, y, gx);
+    }
+
+    /** east OR west mask of row y as 0 / 1. */
+    private void edgeRow(int y, int[] gx, byte[] edges) {
+        sobelRow(y, gx);
+        for (int x = 0; x < width; x++) {
+            int east = clamp(gx[x]);
+            int west = clamp(-gx[x]);
+            boolean on = (east >= eastLo && east <= eastHi) || (west >= westLo && west <= westHi);
+            edges[x] = (byte) (on ? 1 : 0);
+        }
+    }
+
+    /** Dilation mask of one edge row as 0 / 1. */
+    private void dilateRow(byte[] edges, byte[] dilated) {
+        for (int x = 0; x < width; x++) {
+            int v = mean3(horizontalCount(edges, x));
+            dilated[x] = (byte) (v >= dilateLo && v <= dilateHi ? 1 : 0);
+        }
+    }
+
+    private int horizontalCount(byte[] edges, int x) {
+        return edges[Math.max(0, x - 1)] + edges[x] + edges[Math.min(width - 1, x + 1)];
+    }
+
+    /** 8-bit value of Convolve [1 1 1] normalize on a 0 / 255 mask with n pixels set. */
+    private static int mean3(int n) {
+        return (int) (n * 255 / 3.0 + 0.5);
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : v > 255 ? 255 : v;
+    }
+
+    /** count[x] += number of set pixels of row in [x - dx, x + dx], borders replicated. */
+    private void addRowWindow(byte[] row, int dx, int[] count) {
+        int sum = 0;
+        for (int k = -dx; k <= dx; k++) sum += row[Math.max(0, Math.min(width - 1, k))];
+        for (int x = 0; x < width; x++) {
+            count[x] += sum;
+            sum += row[Math.min(width - 1, x + dx + 1)] - row[Math.max(0, x - dx)];
+        }
+    }
+
+    private static int medianCount(int[] rowDx) {
+        int n = 2 * rowDx[0] + 1;
+        for (int dy = 1; dy < rowDx.length; dy++) n += 2 * (2 * rowDx[dy] + 1);
+        return n;
+    }
+
+    /**
+     * Foreground range "Convert to Mask" picks for an 8-bit image with this histogram and no
+     * threshold set (ImageProcessor.setAutoThreshold(ISODATA2, ...)): the IsoData level of the
+     * histogram with a dominant mode flattened, and the side away from the smoothed mode.
+     */
+    static int[] maskRange(int[] histogram) {
+        int[] hist = histogram.clone();
+        int mode = 0, min = -1, max = 0;
+        for (int v = 0; v < 256; v++) {
+            if (hist[v] > hist[mode]) mode = v;
+            if (hist[v] > 0) {
+                if (min < 0) min = v;
+                max = v;
+            }
+        }
+        int second = 0;
+        for (int v = 0; v < 256; v++) {
+            if (hist[v] > second && v != mode) second = hist[v];
+        }
+        if (hist[mode] > second * 2 && second != 0) hist[mode] = (int) (second * 1.5);
+        int level = new ByteProcessor(1, 1).getAutoThreshold(hist);
+
+        float[] smooth = new float[256];
+        for (int v = 0; v < 256; v++) smooth[v] = histogram[v];
+        new GaussianBlur().blur1Direction(new FloatProcessor(256, 1, smooth, null), 2.0, 0.01, true, 0);
+        float peak = 0, sum = 0;
+        int peakAt = 0;
+        for (int v = 0; v < 256; v++) {
+            sum += smooth[v];
+            if (smooth[v] > peak) {
+                peak = smooth[v];
+                peakAt = v;
+            }
+        }
+        if (peak / (sum / 256.0) > 1.5 && max - peakAt > peakAt - min)
+            return new int[]{level, 255};
+        return new int[]{0, level};
+    }
+}
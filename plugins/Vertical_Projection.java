@@ -13,29 +13,7 @@ public class Vertical_Projection implements PlugInFilter {
     }
 
     public void run(ImageProcessor ip) {
-        // 1) Make sure the image is binary
-        // 2) For each row count the number of 1's
-        // 3) Make the pixels from `width - count` to `width` 1, the rest 0
-        // 4) Display the resulting image
-
-        int width = ip.getWidth();
-        int height = ip.getHeight();
-        ImageProcessor resultIp = ip.duplicate();
-        resultIp.setValue(0);
-        resultIp.fill();
-        resultIp.setValue(255);
-        for (int x = 0; x < width; x++) {
-            int count = 0;
-            for (int y = 0; y < height; y++) {
-                if (ip.getPixel(x, y) == 255) {
-                    count++;
-                }
-            }
-            for (int y = height - count; y < height; y++) {
-                resultIp.putPixel(x, y, 255);
-            }
-        }
-        new ImagePlus("Vertical Projection", resultIp).show();
+        // Count of 255 pixels per column: a profile table, or with "draw" bars from the bottom
+        ProjectionEngine.runProjection(ip, false, "Vertical Projection");
     }
-
 }